@@ -19,6 +19,11 @@ package com.github.adamantcheese.chan;
 import android.app.Activity;
 import android.app.Application;
 import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
 import android.os.Build;
 
 import androidx.annotation.NonNull;
@@ -29,10 +34,12 @@ import com.github.adamantcheese.chan.core.di.RepositoryModule;
 import com.github.adamantcheese.chan.core.manager.BoardManager;
 import com.github.adamantcheese.chan.core.manager.ReportManager;
 import com.github.adamantcheese.chan.core.manager.SettingNotificationManager;
+import com.github.adamantcheese.chan.core.net.DnsSelector;
 import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.repository.BitmapRepository;
 import com.github.adamantcheese.chan.core.repository.SiteRepository;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
+import com.github.adamantcheese.chan.core.site.Site;
 import com.github.adamantcheese.chan.ui.service.LastPageNotification;
 import com.github.adamantcheese.chan.ui.service.SavingNotification;
 import com.github.adamantcheese.chan.ui.service.WatchNotification;
@@ -48,6 +55,9 @@ import org.greenrobot.eventbus.EventBusException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
 
@@ -116,6 +126,8 @@ public class Chan
         siteRepository.initialize();
         boardManger.initialize();
 
+        registerDnsCallback();
+
         RxJavaPlugins.setErrorHandler(e -> {
             if (e instanceof UndeliverableException) {
                 e = e.getCause();
@@ -193,6 +205,59 @@ public class Chan
         }
     }
 
+    // Resolve the hosts of all sites ahead of time; this is called right away for the current network, and again
+    // whenever the default network or its DNS servers change, as addresses may differ between networks. Cached
+    // lookups are dropped when the network is lost.
+    private void registerDnsCallback() {
+        DnsSelector dnsSelector = (DnsSelector) NetUtils.applicationClient.dns();
+        ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+            private List<InetAddress> dnsServers;
+
+            @Override
+            public void onAvailable(@NonNull Network network) {
+                dnsServers = null;
+                dnsSelector.clearCache();
+                dnsSelector.prefetch(getSiteHosts());
+            }
+
+            @Override
+            public void onLinkPropertiesChanged(@NonNull Network network, @NonNull LinkProperties linkProperties) {
+                List<InetAddress> newDnsServers = linkProperties.getDnsServers();
+                if (dnsServers != null && !dnsServers.equals(newDnsServers)) {
+                    dnsSelector.clearCache();
+                    dnsSelector.prefetch(getSiteHosts());
+                }
+                dnsServers = newDnsServers;
+            }
+
+            @Override
+            public void onLost(@NonNull Network network) {
+                dnsServers = null;
+                dnsSelector.clearCache();
+            }
+        };
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            AndroidUtils.getConnectivityManager().registerDefaultNetworkCallback(callback);
+        } else {
+            NetworkRequest internetRequest =
+                    new NetworkRequest.Builder().addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).build();
+            AndroidUtils.getConnectivityManager().registerNetworkCallback(internetRequest, callback);
+        }
+    }
+
+    private List<String> getSiteHosts() {
+        List<String> hosts = new ArrayList<>();
+        for (Site site : siteRepository.all().getAll()) {
+            for (String host : site.endpoints().hosts()) {
+                if (!hosts.contains(host)) {
+                    hosts.add(host);
+                }
+            }
+        }
+        return hosts;
+    }
+
     private String exceptionToString(boolean isCalledFromRxJavaHandler, Throwable e) {
         try (StringWriter sw = new StringWriter()) {
             try (PrintWriter pw = new PrintWriter(sw)) {
@@ -21,9 +21,12 @@ import com.github.adamantcheese.chan.core.model.orm.Filter;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DatabaseFilterManager {
     DatabaseHelper helper;
+    // counts changes made to the filter table, after each change is done
+    private final AtomicInteger modificationCount = new AtomicInteger();
 
     public DatabaseFilterManager(DatabaseHelper helper) {
         this.helper = helper;
@@ -32,6 +35,7 @@ public class DatabaseFilterManager {
     public Callable<Filter> createFilter(final Filter filter) {
         return () -> {
             helper.getFilterDao().create(filter);
+            modificationCount.incrementAndGet();
             return filter;
         };
     }
@@ -41,6 +45,7 @@ public class DatabaseFilterManager {
             for (Filter filter : filters) {
                 helper.getFilterDao().update(filter);
             }
+            modificationCount.incrementAndGet();
             return filters;
         };
     }
@@ -48,6 +53,7 @@ public class DatabaseFilterManager {
     public Callable<Void> deleteFilter(final Filter filter) {
         return () -> {
             helper.getFilterDao().delete(filter);
+            modificationCount.incrementAndGet();
             return null;
         };
     }
@@ -55,6 +61,7 @@ public class DatabaseFilterManager {
     public Callable<Filter> updateFilter(final Filter filter) {
         return () -> {
             helper.getFilterDao().update(filter);
+            modificationCount.incrementAndGet();
             return filter;
         };
     }
@@ -68,6 +75,14 @@ public class DatabaseFilterManager {
         };
     }
 
+    /**
+     * @return the number of changes made to the filters so far; read this before reading the filters, and they are
+     * up to date for as long as this stays the same
+     */
+    public int getModificationCount() {
+        return modificationCount.get();
+    }
+
     public Callable<Integer> getCount() {
         return () -> (int) helper.getFilterDao().countOf();
     }
@@ -75,6 +90,7 @@ public class DatabaseFilterManager {
     public Callable<Void> deleteFilters(List<Filter> filtersToDelete) {
         return () -> {
             helper.getFilterDao().delete(filtersToDelete);
+            modificationCount.incrementAndGet();
             return null;
         };
     }
@@ -24,6 +24,7 @@ import com.github.adamantcheese.chan.core.manager.FilterWatchManager;
 import com.github.adamantcheese.chan.core.manager.ReportManager;
 import com.github.adamantcheese.chan.core.manager.WatchManager;
 import com.github.adamantcheese.chan.core.repository.BoardRepository;
+import com.github.adamantcheese.chan.core.site.parser.ParsedPostCache;
 import com.github.adamantcheese.chan.utils.Logger;
 
 import org.codejargon.feather.Provides;
@@ -67,6 +68,13 @@ public class ManagerModule {
         return new FilterWatchManager(boardRepository, filterEngine, watchManager);
     }
 
+    @Provides
+    @Singleton
+    public ParsedPostCache provideParsedPostCache() {
+        Logger.d(AppModule.DI_TAG, "Parsed post cache");
+        return new ParsedPostCache(new File(getCacheDir(), "parsed_posts"), 32 * 1024 * 1024);
+    }
+
     @Provides
     @Singleton
     public ReportManager provideReportManager() {
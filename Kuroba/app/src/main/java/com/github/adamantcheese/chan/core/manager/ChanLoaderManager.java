@@ -21,12 +21,15 @@ import android.util.LruCache;
 import androidx.annotation.NonNull;
 
 import com.github.adamantcheese.chan.core.model.ChanThread;
+import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
 import com.github.adamantcheese.chan.core.site.loader.ChanThreadLoader;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -38,7 +41,8 @@ import java.util.Map;
  * as many times as you want as long as you call release an equal amount of times.<br>
  * <br>
  * The internal cache here acts as a sort of cache for recently visited threads, preserving their already processed API
- * responses and allows threads to be returned quickly and switched between with minimal overhead.
+ * responses and allows threads to be returned quickly and switched between with minimal overhead. Filters that changed
+ * while a thread was cached are applied to its posts when it is obtained again, without loading it again.
  * <br>
  * In addition, this class acts as a sort of "reply draft" cache; this is effectively the only place that loadables should
  * have a constant reference to them held. As a result, reply drafts are available in the following situations:<br><br>
@@ -73,6 +77,8 @@ public class ChanLoaderManager {
                 if (chanLoader != null) {
                     threadLoadersCache.remove(loadable);
                     threadLoaders.put(loadable, chanLoader);
+                    // the filters may have changed while it was cached
+                    chanLoader.reapplyFilters();
                 }
             }
 
@@ -89,6 +95,24 @@ public class ChanLoaderManager {
         return chanLoader;
     }
 
+    /**
+     * @return the posts of all loaded threads, in use or cached; for benchmarks in the developer settings
+     */
+    public static synchronized List<Post> getLoadedPosts() {
+        BackgroundUtils.ensureMainThread();
+
+        List<ChanThreadLoader> loaders = new ArrayList<>(threadLoaders.values());
+        loaders.addAll(threadLoadersCache.snapshot().values());
+        List<Post> posts = new ArrayList<>();
+        for (ChanThreadLoader loader : loaders) {
+            ChanThread thread = loader.getThread();
+            if (thread != null) {
+                posts.addAll(thread.getPosts());
+            }
+        }
+        return posts;
+    }
+
     public static synchronized void release(@NonNull ChanThreadLoader chanLoader, ResponseResult<ChanThread> listener) {
         BackgroundUtils.ensureMainThread();
 
@@ -24,6 +24,7 @@ import android.widget.Toast;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.database.DatabaseFilterManager;
@@ -48,6 +49,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -107,7 +110,17 @@ public class FilterEngine {
 
     private final DatabaseFilterManager databaseFilterManager;
 
+    // a filter is turned off once this many of its matches took longer than the budget, in CPU time; patterns normally
+    // take well under a millisecond, and a single slow match may be the device being busy with something else
+    static final long MATCH_TIME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int MAX_OVERRUNS = 3;
+
     private final Map<String, Pattern> patternCache = new HashMap<>();
+    // by filter id
+    private final Map<Integer, FilterStats> filterStats = new ConcurrentHashMap<>();
+
+    private final Object snapshotLock = new Object();
+    private volatile FilterSnapshot snapshot;
 
     public FilterEngine(DatabaseFilterManager databaseFilterManager) {
         this.databaseFilterManager = databaseFilterManager;
@@ -115,6 +128,7 @@ public class FilterEngine {
 
     public void deleteFilter(Filter filter) {
         DatabaseUtils.runTask(databaseFilterManager.deleteFilter(filter));
+        filterStats.remove(filter.id);
     }
 
     public void createOrUpdateFilter(Filter filter) {
@@ -122,38 +136,123 @@ public class FilterEngine {
             DatabaseUtils.runTask(databaseFilterManager.createFilter(filter));
         } else {
             DatabaseUtils.runTask(databaseFilterManager.updateFilter(filter));
+            FilterStats stats = filterStats.get(filter.id);
+            if (stats != null && filter.enabled) {
+                // the user turned it back on, so give it another chance
+                stats.clearOverBudget();
+            }
         }
     }
 
-    public List<Filter> getEnabledFilters() {
-        List<Filter> filters = DatabaseUtils.runTask(databaseFilterManager.getFilters());
-        List<Filter> enabled = new ArrayList<>();
+    /**
+     * @return the stats of a filter, or null if it isn't saved
+     */
+    @AnyThread
+    @Nullable
+    public FilterStats getStats(Filter filter) {
+        if (filter.id == 0) return null;
+        FilterStats stats = filterStats.get(filter.id);
+        if (stats == null) {
+            filterStats.putIfAbsent(filter.id, new FilterStats());
+            stats = filterStats.get(filter.id);
+        }
+        return stats;
+    }
+
+    /**
+     * Called when a filter took too long to match a single post; once that happened a few times, the filter is turned
+     * off so that it doesn't hold up loading any more.
+     */
+    @AnyThread
+    void disableSlowFilter(Filter filter, long nanos) {
+        FilterStats stats = getStats(filter);
+        if (stats == null || stats.addOverrun() < MAX_OVERRUNS || !stats.setOverBudget(nanos)) return;
+
+        Logger.w(this, "Disabling filter " + filter.pattern + ", it took " + stats.getOverBudgetMillis() + " ms");
+        // the filters of a snapshot are shared, so save a copy
+        Filter disabled = filter.clone();
+        disabled.id = filter.id;
+        disabled.enabled = false;
+        DatabaseUtils.runTaskAsync(() -> {
+            Filter saved = databaseFilterManager.updateFilter(disabled).call();
+            stats.setDisableSaved();
+            return saved;
+        });
+    }
+
+    /**
+     * Filters can be saved as enabled again without going through {@link #createOrUpdateFilter(Filter)}, like when
+     * they are reordered; a filter that was turned off for being too slow and is enabled again gets another chance.
+     * Runs on the database thread, so a filter that is still being saved as disabled isn't seen as enabled again.
+     */
+    private void clearReenabledStats(List<Filter> filters) {
         for (Filter filter : filters) {
-            if (filter.enabled) {
-                enabled.add(filter);
+            FilterStats stats = filterStats.get(filter.id);
+            if (stats != null && filter.enabled && stats.isDisableSaved()) {
+                stats.clearOverBudget();
             }
         }
-        Collections.sort(enabled, (o1, o2) -> o1.order - o2.order);
-        return enabled;
+    }
+
+    /**
+     * @return the current filters; this only reads the database if the filters were changed since the last call
+     */
+    @AnyThread
+    public FilterSnapshot getSnapshot() {
+        FilterSnapshot current = snapshot;
+        // read first; if the filters change while reading them, the next call reads them again
+        int modifications = databaseFilterManager.getModificationCount();
+        if (current != null && current.getVersion() == modifications) return current;
+
+        synchronized (snapshotLock) {
+            current = snapshot;
+            modifications = databaseFilterManager.getModificationCount();
+            if (current != null && current.getVersion() == modifications) return current;
+
+            List<Filter> filters = DatabaseUtils.runTask(() -> {
+                List<Filter> saved = databaseFilterManager.getFilters().call();
+                clearReenabledStats(saved);
+                return saved;
+            });
+            current = new FilterSnapshot(this, modifications, filters);
+            snapshot = current;
+            return current;
+        }
+    }
+
+    /**
+     * @return copies of the enabled filters, in order; to use them without changing them, use {@link #getSnapshot()}
+     */
+    public List<Filter> getEnabledFilters() {
+        return copyOf(getSnapshot().getEnabledFilters());
     }
 
     public List<Filter> getAllFilters() {
         try {
-            return DatabaseUtils.runTask(databaseFilterManager.getFilters());
+            return copyOf(getSnapshot().getAllFilters());
         } catch (Exception e) {
             Logger.wtf(this, "Couldn't get all filters for some reason.");
             return Collections.emptyList();
         }
     }
 
-    public List<Filter> getEnabledWatchFilters() {
-        List<Filter> watchFilters = new ArrayList<>();
-        for (Filter f : getEnabledFilters()) {
-            if (f.action == FilterAction.WATCH.id) {
-                watchFilters.add(f);
-            }
+    // the filters of a snapshot are shared, so callers that may change what they get have their own copies
+    private static List<Filter> copyOf(List<Filter> filters) {
+        List<Filter> copies = new ArrayList<>(filters.size());
+        for (Filter filter : filters) {
+            Filter copy = filter.clone();
+            copy.id = filter.id;
+            copies.add(copy);
         }
-        return watchFilters;
+        return copies;
+    }
+
+    /**
+     * @return the given filters, compiled to match them against posts all at once
+     */
+    @AnyThread
+    public FilterMatcher compileFilters(List<Filter> filters) {
+        return new FilterMatcher(this, filters);
     }
 
     @AnyThread
@@ -256,19 +355,21 @@ public class FilterEngine {
         if ((filter.type & type.flag) == 0) return false;
         if (text == null) return false;
 
+        int extraFlags = type == FLAG_CODE ? Pattern.CASE_INSENSITIVE : 0;
+        // the same filter compiles to a different pattern for some types
+        String patternCacheKey = extraFlags + ":" + filter.pattern;
         Pattern pattern = null;
         if (!forceCompile) {
             synchronized (patternCache) {
-                pattern = patternCache.get(filter.pattern);
+                pattern = patternCache.get(patternCacheKey);
             }
         }
 
         if (pattern == null) {
-            int extraFlags = type == FLAG_CODE ? Pattern.CASE_INSENSITIVE : 0;
             pattern = compile(filter.pattern, extraFlags);
             if (pattern != null) {
                 synchronized (patternCache) {
-                    patternCache.put(filter.pattern, pattern);
+                    patternCache.put(patternCacheKey, pattern);
                 }
                 Logger.d(this, "Resulting pattern: " + pattern.pattern());
             }
@@ -286,7 +387,7 @@ public class FilterEngine {
                             Spanned.SPAN_INCLUSIVE_EXCLUSIVE
                     );
                     final String filterPattern = filter.pattern;
-                    ((Spannable) text).setSpan(new PostLinkable(ThemeHelper.getTheme(), new Object(), Type.OTHER) {
+                    ((Spannable) text).setSpan(new PostLinkable(new Object(), Type.OTHER) {
                         @Override
                         public void onClick(@NonNull View widget) {
                             showToast(getAppContext(), "Matching filter: " + filterPattern, Toast.LENGTH_LONG);
@@ -303,7 +404,7 @@ public class FilterEngine {
         }
     }
 
-    private static final Pattern isRegexPattern = Pattern.compile("^/(.*)/(i?)$");
+    static final Pattern isRegexPattern = Pattern.compile("^/(.*)/(i?)$");
     private static final Pattern filterFilthyPattern = Pattern.compile("([.^$*+?()\\]\\[{}\\\\|-])");
     // an escaped \ and an escaped *, to replace an escaped * from escapeRegex
     private static final Pattern wildcardPattern = Pattern.compile("\\\\\\*");
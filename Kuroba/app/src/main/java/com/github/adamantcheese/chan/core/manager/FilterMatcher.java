@@ -0,0 +1,683 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import android.os.Debug;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.manager.FilterEngine.FilterAction;
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.PostHttpIcon;
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.orm.Filter;
+import com.github.adamantcheese.chan.core.settings.ChanSettings;
+import com.github.adamantcheese.chan.core.site.SiteEndpoints;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static com.github.adamantcheese.chan.core.manager.FilterType.COMMENT;
+import static com.github.adamantcheese.chan.core.manager.FilterType.FILENAME;
+import static com.github.adamantcheese.chan.core.manager.FilterType.FLAG_CODE;
+import static com.github.adamantcheese.chan.core.manager.FilterType.ID;
+import static com.github.adamantcheese.chan.core.manager.FilterType.IMAGE;
+import static com.github.adamantcheese.chan.core.manager.FilterType.NAME;
+import static com.github.adamantcheese.chan.core.manager.FilterType.SUBJECT;
+import static com.github.adamantcheese.chan.core.manager.FilterType.TRIPCODE;
+
+/**
+ * A list of filters, compiled so that each field of a post is scanned once for all filters instead of once per filter.
+ * <br>
+ * For every field, the text that a filter can't match without (its words, its exact sentence, or its regex if that is
+ * just some text) goes into one Aho-Corasick automaton, and the other regexes are joined into a single alternation.
+ * These only find the filters that might match; each of those is then run on its own, so the result is always the same
+ * as running {@link FilterEngine#matches(Filter, Post.Builder)} for every filter.<br>
+ * This never changes after it is made, so it can be used from any number of threads.
+ */
+@AnyThread
+public class FilterMatcher {
+    // the fields that are checked before images, in the order the filter engine checks them
+    private static final FilterType[] TEXT_FIELDS = {TRIPCODE, NAME, COMMENT, ID, SUBJECT};
+
+    private final FilterEngine filterEngine;
+    private final List<Filter> filters;
+    // by filter index, null for filters that aren't saved
+    private final FilterStats[] stats;
+    // by FilterType ordinal
+    private final FieldMatcher[] fieldMatchers = new FieldMatcher[FilterType.values().length];
+
+    FilterMatcher(FilterEngine filterEngine, List<Filter> filters) {
+        this.filterEngine = filterEngine;
+        this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+        stats = new FilterStats[filters.size()];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = filterEngine.getStats(this.filters.get(i));
+        }
+        for (FilterType type : FilterType.values()) {
+            fieldMatchers[type.ordinal()] = new FieldMatcher(filterEngine, this.filters, stats, type);
+        }
+    }
+
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Like the filter engine, a filter that matches an image hash hides or removes that image from the post.
+     *
+     * @param rematch if the post was already matched by some filters before; its images are shared with the post that
+     *                was, so they are left as they are, image hashes are matched against the images from before any
+     *                filter removed some, and hits aren't counted again. Not for use with debug filters, which mark the
+     *                matches in the comment.
+     * @return the filters that match the post, in the order they were given in
+     */
+    public List<Filter> match(Post.Builder post, boolean rematch) {
+        if (filters.isEmpty()) return Collections.emptyList();
+
+        List<Filter> matched = new ArrayList<>();
+        if (ChanSettings.debugFilters.get()) {
+            List<PostImage> images = new ArrayList<>(post.images);
+            // the filter engine marks what each filter matched in the post, which needs every filter run on its own
+            for (int i = 0; i < filters.size(); i++) {
+                if (filterEngine.matches(filters.get(i), post)) {
+                    matched.add(filters.get(i));
+                    if (stats[i] != null) {
+                        stats[i].addHit();
+                    }
+                }
+            }
+            if (post.unfilteredImages == null && images.size() != post.images.size()) {
+                post.unfilteredImages = images;
+            }
+            return matched;
+        }
+
+        if (!post.moderatorCapcode.isEmpty() || post.sticky) return matched;
+
+        PostMatch postMatch = new PostMatch(post, !rematch);
+        for (int i = 0; i < filters.size(); i++) {
+            Filter filter = filters.get(i);
+            if (filter.onlyOnOP && !post.op) continue;
+            if (filter.applyToSaved && !post.isSavedReply) continue;
+
+            if (postMatch.matches(filter, i)) {
+                matched.add(filter);
+                if (stats[i] != null && !rematch) {
+                    stats[i].addHit();
+                }
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Set the filter flags of the post for every filter that matches it.
+     *
+     * @param rematch see {@link #match(Post.Builder, boolean)}
+     */
+    public void apply(Post.Builder post, boolean rematch) {
+        for (Filter f : match(post, rematch)) {
+            switch (FilterAction.forId(f.action)) {
+                case COLOR:
+                    post.filter(f.color, false, false, false, f.applyToReplies, f.onlyOnOP, f.applyToSaved);
+                    break;
+                case HIDE:
+                    post.filter(0, true, false, false, f.applyToReplies, f.onlyOnOP, false);
+                    break;
+                case REMOVE:
+                    post.filter(0, false, true, false, f.applyToReplies, f.onlyOnOP, false);
+                    break;
+                case WATCH:
+                    post.filter(0, false, false, true, false, true, false);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * The fields of a single post, matched against all filters when a filter first needs them.
+     */
+    private class PostMatch {
+        private final Post.Builder post;
+        private final boolean[][] textHits = new boolean[TEXT_FIELDS.length][];
+        private boolean textMatched;
+        // images as they were before any filter removed them, with the filters that match their hashes
+        private final List<PostImage> images;
+        // if images are hidden and removed; if not, the hashes are matched against all images the post had
+        private final boolean changeImages;
+        private boolean[][] imageHits;
+        private boolean[] flagHits;
+        private boolean flagMatched;
+        private boolean[] filenameHits;
+        // removing images changes the filenames, so this is matched again when that happens
+        private int filenameImageCount = -1;
+
+        private PostMatch(Post.Builder post, boolean changeImages) {
+            this.post = post;
+            images = new ArrayList<>(changeImages || post.unfilteredImages == null
+                    ? post.images
+                    : post.unfilteredImages);
+            this.changeImages = changeImages;
+        }
+
+        private boolean matches(Filter filter, int index) {
+            if (!textMatched) {
+                textMatched = true;
+                for (int i = 0; i < TEXT_FIELDS.length; i++) {
+                    textHits[i] = fieldMatchers[TEXT_FIELDS[i].ordinal()].match(textOf(TEXT_FIELDS[i]));
+                }
+            }
+            for (boolean[] hits : textHits) {
+                if (isHit(hits, index)) return true;
+            }
+
+            if (imageHits == null) {
+                imageHits = new boolean[images.size()][];
+                for (int i = 0; i < images.size(); i++) {
+                    imageHits[i] = fieldMatchers[IMAGE.ordinal()].match(images.get(i).fileHash);
+                }
+            }
+            for (PostImage image : changeImages ? post.images : images) {
+                if (isHit(imageHits[indexOfImage(image)], index)) {
+                    //for filtering image hashes, we don't want to apply the post-level filter unless the user set it
+                    //as such; this takes care of it at an image level, either flagging it to be hidden, which applies
+                    //a custom spoiler image, or removes the image from the post entirely since this is a builder
+                    if (changeImages && filter.action == FilterAction.HIDE.id) {
+                        image.hidden = true;
+                    } else if (changeImages && filter.action == FilterAction.REMOVE.id) {
+                        if (post.unfilteredImages == null) {
+                            post.unfilteredImages = images;
+                        }
+                        post.images.remove(image);
+                    }
+                    return ChanSettings.applyImageFilterToPost.get();
+                }
+            }
+
+            if (!flagMatched) {
+                flagMatched = true;
+                String flagCode = flagCode();
+                if (!flagCode.isEmpty()) {
+                    flagHits = fieldMatchers[FLAG_CODE.ordinal()].match(flagCode);
+                }
+            }
+            if (isHit(flagHits, index)) return true;
+
+            if (post.images != null) {
+                if (filenameImageCount != post.images.size()) {
+                    filenameImageCount = post.images.size();
+                    StringBuilder files = new StringBuilder();
+                    for (PostImage image : post.images) {
+                        files.append(image.filename).append(" ");
+                    }
+                    String fnames = files.toString();
+                    filenameHits = fnames.isEmpty() ? null : fieldMatchers[FILENAME.ordinal()].match(fnames);
+                }
+                return isHit(filenameHits, index);
+            }
+
+            return false;
+        }
+
+        private CharSequence textOf(FilterType type) {
+            switch (type) {
+                case TRIPCODE:
+                    return post.tripcode;
+                case NAME:
+                    return post.name;
+                case COMMENT:
+                    return post.comment;
+                case ID:
+                    return post.posterId;
+                case SUBJECT:
+                    return post.subject;
+            }
+            return null;
+        }
+
+        private int indexOfImage(PostImage image) {
+            for (int i = 0; i < images.size(); i++) {
+                if (images.get(i) == image) return i;
+            }
+            throw new IllegalStateException("Image was added to the post while filtering");
+        }
+
+        //figure out if the post has a flag code
+        private String flagCode() {
+            if (post.httpIcons != null) {
+                for (PostHttpIcon icon : post.httpIcons) {
+                    if (icon.type == SiteEndpoints.IconType.COUNTRY_FLAG
+                            || icon.type == SiteEndpoints.IconType.BOARD_FLAG) {
+                        return icon.code;
+                    }
+                }
+            }
+            return "";
+        }
+    }
+
+    private static boolean isHit(@Nullable boolean[] hits, int index) {
+        return hits != null && hits[index];
+    }
+
+    /**
+     * All filters that apply to one field of a post.
+     */
+    private static class FieldMatcher {
+        // an inline flag group that turns on comments, which would comment out the rest of an alternation
+        private static final Pattern INLINE_COMMENTS_PATTERN = Pattern.compile("\\(\\?[a-zA-Z-]*x");
+        private static final Pattern WILDCARD_PATTERN = Pattern.compile("\\*");
+
+        private final FilterEngine filterEngine;
+        private final List<Filter> filters;
+        private final FilterStats[] stats;
+        // by filter index, null for filters that don't apply to this field or don't compile
+        private final Pattern[] patterns;
+        private final LiteralAutomaton literals;
+        // filters that must be run for every text
+        private final int[] always;
+        @Nullable
+        private final Pattern combined;
+        // filters that must be run if the combined pattern matches
+        private final int[] combinedFilters;
+        // set if the combined pattern went over the budget; which filter did it is only known by running them alone
+        private volatile boolean combinedTooSlow;
+
+        private FieldMatcher(FilterEngine filterEngine, List<Filter> filters, FilterStats[] stats, FilterType type) {
+            this.filterEngine = filterEngine;
+            this.filters = filters;
+            this.stats = stats;
+            int extraFlags = type == FLAG_CODE ? Pattern.CASE_INSENSITIVE : 0;
+            patterns = new Pattern[filters.size()];
+            LiteralAutomaton.Builder literalsBuilder = new LiteralAutomaton.Builder();
+            List<Integer> alwaysList = new ArrayList<>();
+            List<Integer> combinedList = new ArrayList<>();
+            StringBuilder combinedRegex = new StringBuilder();
+
+            for (int i = 0; i < filters.size(); i++) {
+                Filter filter = filters.get(i);
+                if (!filter.hasFilter(type)) continue;
+                Pattern pattern = filterEngine.compile(filter.pattern, extraFlags);
+                if (pattern == null) continue;
+                patterns[i] = pattern;
+
+                List<String> keys = literalsOf(filter.pattern);
+                if (keys != null) {
+                    for (String key : keys) {
+                        literalsBuilder.add(key, i);
+                    }
+                } else if (canCombine(pattern)) {
+                    if (combinedRegex.length() > 0) {
+                        combinedRegex.append('|');
+                    }
+                    boolean caseInsensitive = (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0;
+                    combinedRegex.append(caseInsensitive ? "(?i:" : "(?:").append(pattern.pattern()).append(')');
+                    combinedList.add(i);
+                } else {
+                    alwaysList.add(i);
+                }
+            }
+
+            Pattern combinedPattern = null;
+            if (combinedList.size() == 1) {
+                // nothing to gain from an alternation of one
+                alwaysList.addAll(combinedList);
+                combinedList.clear();
+            } else if (!combinedList.isEmpty()) {
+                try {
+                    combinedPattern = Pattern.compile(combinedRegex.toString());
+                } catch (PatternSyntaxException e) {
+                    // like group names used by more than one filter
+                    alwaysList.addAll(combinedList);
+                    combinedList.clear();
+                }
+            }
+
+            literals = literalsBuilder.build();
+            always = toArray(alwaysList);
+            combined = combinedPattern;
+            combinedFilters = toArray(combinedList);
+        }
+
+        /**
+         * @return which filters match the text by index, or null if none do
+         */
+        @Nullable
+        private boolean[] match(@Nullable CharSequence text) {
+            if (text == null) return null;
+
+            boolean[] candidates = new boolean[patterns.length];
+            boolean any = literals.find(text, candidates);
+            for (int index : always) {
+                candidates[index] = true;
+                any = true;
+            }
+            if (combined != null && (combinedTooSlow || findCombined(text))) {
+                for (int index : combinedFilters) {
+                    candidates[index] = true;
+                }
+                any = true;
+            }
+            if (!any) return null;
+
+            any = false;
+            for (int i = 0; i < candidates.length; i++) {
+                if (candidates[i]) {
+                    candidates[i] = find(i, text);
+                    any |= candidates[i];
+                }
+            }
+            return any ? candidates : null;
+        }
+
+        private boolean findCombined(CharSequence text) {
+            long start = threadTimeNanos();
+            boolean found = combined.matcher(text).find();
+            if (threadTimeNanos() - start > FilterEngine.MATCH_TIME_BUDGET_NANOS) {
+                combinedTooSlow = true;
+                return true;
+            }
+            return found;
+        }
+
+        /**
+         * Run a single filter, timing it. A filter that keeps going over the budget is turned off; the regex engine
+         * copies the text before matching, so there is no way to stop a match that is already running.
+         */
+        private boolean find(int index, CharSequence text) {
+            FilterStats filterStats = stats[index];
+            if (filterStats == null) return patterns[index].matcher(text).find();
+            if (filterStats.isOverBudget()) return false;
+
+            long start = threadTimeNanos();
+            boolean found = patterns[index].matcher(text).find();
+            long time = threadTimeNanos() - start;
+            filterStats.addMatchTime(time);
+            if (time > FilterEngine.MATCH_TIME_BUDGET_NANOS) {
+                filterEngine.disableSlowFilter(filters.get(index), time);
+            }
+            return found;
+        }
+
+        // the CPU time of this thread, so that time spent waiting for the CPU under load doesn't count against a filter
+        private static long threadTimeNanos() {
+            long time = Debug.threadCpuTimeNanos();
+            return time == -1 ? System.nanoTime() : time;
+        }
+
+        /**
+         * @return text that a match of the pattern for this raw filter must contain at least one of, or null if there
+         * isn't any; this mirrors the cases in {@link FilterEngine#compile(String, int)}
+         */
+        @Nullable
+        private static List<String> literalsOf(String rawPattern) {
+            List<String> keys = new ArrayList<>();
+            Matcher isRegex = FilterEngine.isRegexPattern.matcher(rawPattern);
+            if (isRegex.matches()) {
+                keys.add(unescapeLiteral(isRegex.group(1)));
+            } else if (rawPattern.length() >= 2 && rawPattern.charAt(0) == '"'
+                    && rawPattern.charAt(rawPattern.length() - 1) == '"') {
+                keys.add(rawPattern.substring(1, rawPattern.length() - 1));
+            } else {
+                for (String word : rawPattern.split(" ")) {
+                    // any part of a word between wildcards has to be in the text
+                    String longest = "";
+                    for (String part : WILDCARD_PATTERN.split(word)) {
+                        if (part.length() > longest.length()) {
+                            longest = part;
+                        }
+                    }
+                    keys.add(longest);
+                }
+            }
+
+            for (String key : keys) {
+                if (!LiteralAutomaton.canAdd(key)) return null;
+            }
+            return keys;
+        }
+
+        /**
+         * @return the text the regex matches if it only matches that text, null otherwise
+         */
+        @Nullable
+        private static String unescapeLiteral(String regex) {
+            StringBuilder literal = new StringBuilder(regex.length());
+            for (int i = 0; i < regex.length(); i++) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    // an escaped letter or digit is a character class or something like it
+                    if (++i == regex.length() || Character.isLetterOrDigit(regex.charAt(i))) return null;
+                    literal.append(regex.charAt(i));
+                } else if (".^$*+?()[]{}|".indexOf(c) >= 0) {
+                    return null;
+                } else {
+                    literal.append(c);
+                }
+            }
+            return literal.toString();
+        }
+
+        // back references would point to the wrong groups once the regexes are joined
+        private static boolean canCombine(Pattern pattern) {
+            String regex = pattern.pattern();
+            for (int i = 0; i < regex.length() - 1; i++) {
+                if (regex.charAt(i) == '\\') {
+                    char next = regex.charAt(++i);
+                    if (Character.isDigit(next) || next == 'k') return false;
+                }
+            }
+            return !INLINE_COMMENTS_PATTERN.matcher(regex).find();
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Finds which of a set of keys occur in a text in a single pass, ignoring case. Keys are ASCII only, so that
+     * folding single characters finds everything a case insensitive regex would; a match only means a filter might
+     * match, so finding too much is fine.
+     */
+    private static class LiteralAutomaton {
+        private static final LiteralAutomaton EMPTY =
+                new LiteralAutomaton(new char[][] {{}}, new int[][] {{}}, new int[1], new int[][] {{}});
+
+        // per node, the characters leading to its children in ascending order, and those children
+        private final char[][] labels;
+        private final int[][] children;
+        // per node, the node for the longest proper suffix of its text that is also in the trie
+        private final int[] fail;
+        // per node, the filters with a key that ends at that node, including through fail links
+        private final int[][] outputs;
+
+        private LiteralAutomaton(char[][] labels, int[][] children, int[] fail, int[][] outputs) {
+            this.labels = labels;
+            this.children = children;
+            this.fail = fail;
+            this.outputs = outputs;
+        }
+
+        private static boolean canAdd(@Nullable String key) {
+            if (key == null || key.isEmpty()) return false;
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) >= 0x80) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Mark the filters with a key in the text.
+         *
+         * @return true if any key was found
+         */
+        private boolean find(CharSequence text, boolean[] found) {
+            if (labels.length == 1) return false;
+
+            if (hasMultiCharFold(text)) {
+                // these fold into more than one character, which a regex would match against keys; just try them all
+                for (int[] output : outputs) {
+                    for (int index : output) {
+                        found[index] = true;
+                    }
+                }
+                return true;
+            }
+
+            boolean any = false;
+            int node = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = fold(text.charAt(i));
+                int next = child(node, c);
+                while (next < 0 && node != 0) {
+                    node = fail[node];
+                    next = child(node, c);
+                }
+                node = next < 0 ? 0 : next;
+                for (int index : outputs[node]) {
+                    found[index] = true;
+                    any = true;
+                }
+            }
+            return any;
+        }
+
+        private int child(int node, char c) {
+            int i = Arrays.binarySearch(labels[node], c);
+            return i >= 0 ? children[node][i] : -1;
+        }
+
+        private static char fold(char c) {
+            if (c < 0x80) {
+                return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+            }
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+
+        private static boolean hasMultiCharFold(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                // sharp s, capital sharp s, and the latin ligatures
+                if (c == '\u00DF' || c == '\u1E9E' || (c >= '\uFB00' && c <= '\uFB06')) return true;
+            }
+            return false;
+        }
+
+        private static class Builder {
+            private final List<Map<Character, Integer>> trie = new ArrayList<>();
+            private final List<List<Integer>> keyOutputs = new ArrayList<>();
+
+            private Builder() {
+                addNode();
+            }
+
+            private int addNode() {
+                trie.add(new HashMap<>());
+                keyOutputs.add(new ArrayList<>());
+                return trie.size() - 1;
+            }
+
+            private void add(String key, int filterIndex) {
+                int node = 0;
+                for (int i = 0; i < key.length(); i++) {
+                    char c = fold(key.charAt(i));
+                    Integer next = trie.get(node).get(c);
+                    if (next == null) {
+                        next = addNode();
+                        trie.get(node).put(c, next);
+                    }
+                    node = next;
+                }
+                if (!keyOutputs.get(node).contains(filterIndex)) {
+                    keyOutputs.get(node).add(filterIndex);
+                }
+            }
+
+            private LiteralAutomaton build() {
+                int size = trie.size();
+                if (size == 1) return EMPTY;
+
+                char[][] labels = new char[size][];
+                int[][] children = new int[size][];
+                for (int node = 0; node < size; node++) {
+                    List<Character> chars = new ArrayList<>(trie.get(node).keySet());
+                    Collections.sort(chars);
+                    labels[node] = new char[chars.size()];
+                    children[node] = new int[chars.size()];
+                    for (int i = 0; i < chars.size(); i++) {
+                        labels[node][i] = chars.get(i);
+                        children[node][i] = trie.get(node).get(chars.get(i));
+                    }
+                }
+
+                // breadth first, so the fail node of a node is always done before it
+                int[] fail = new int[size];
+                int[][] outputs = new int[size][];
+                outputs[0] = new int[0];
+                int[] queue = new int[size];
+                int head = 0;
+                int tail = 0;
+                for (int child : children[0]) {
+                    queue[tail++] = child;
+                }
+                while (head < tail) {
+                    int node = queue[head++];
+                    List<Integer> nodeOutputs = new ArrayList<>(keyOutputs.get(node));
+                    for (int index : outputs[fail[node]]) {
+                        if (!nodeOutputs.contains(index)) {
+                            nodeOutputs.add(index);
+                        }
+                    }
+                    outputs[node] = FieldMatcher.toArray(nodeOutputs);
+
+                    for (int i = 0; i < labels[node].length; i++) {
+                        char c = labels[node][i];
+                        int child = children[node][i];
+                        int f = fail[node];
+                        int next = childOf(labels, children, f, c);
+                        while (next < 0 && f != 0) {
+                            f = fail[f];
+                            next = childOf(labels, children, f, c);
+                        }
+                        fail[child] = next < 0 ? 0 : next;
+                        queue[tail++] = child;
+                    }
+                }
+                return new LiteralAutomaton(labels, children, fail, outputs);
+            }
+
+            private static int childOf(char[][] labels, int[][] children, int node, char c) {
+                int i = Arrays.binarySearch(labels[node], c);
+                return i >= 0 ? children[node][i] : -1;
+            }
+        }
+    }
+}
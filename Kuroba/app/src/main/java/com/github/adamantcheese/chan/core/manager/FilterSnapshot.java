@@ -0,0 +1,196 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import android.text.TextUtils;
+
+import androidx.annotation.AnyThread;
+
+import com.github.adamantcheese.chan.core.manager.FilterEngine.FilterAction;
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.model.orm.Filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * All filters as they were at some point, with the filters for each board already worked out.<br>
+ * A snapshot never changes after it is made, so it can be used from any thread without copying anything. The filters in
+ * it are shared by everyone using the snapshot, so they must not be changed either; the filter engine makes a new
+ * snapshot when the filters are changed. The version can be used to check if something made from an older snapshot is
+ * still up to date.
+ */
+@AnyThread
+public class FilterSnapshot {
+    private final FilterEngine filterEngine;
+    private final int version;
+    private final List<Filter> allFilters;
+    private final List<Filter> enabledFilters;
+    private final List<Filter> enabledWatchFilters;
+    // by site id:board code, for boards that some filter only applies to
+    private final Map<String, BoardFilters> boardFilters = new HashMap<>();
+    // for all other boards
+    private final BoardFilters otherBoardFilters;
+
+    /**
+     * @param filters all filters, which aren't used by anything else
+     */
+    FilterSnapshot(FilterEngine filterEngine, int version, List<Filter> filters) {
+        this.filterEngine = filterEngine;
+        this.version = version;
+
+        List<Filter> all = new ArrayList<>(filters);
+        Collections.sort(all, (o1, o2) -> o1.order - o2.order);
+        List<Filter> enabled = new ArrayList<>();
+        List<Filter> watch = new ArrayList<>();
+        List<Filter> everyBoard = new ArrayList<>();
+        // for enabled filters that only apply to some boards, those boards
+        Map<Filter, Set<String>> boardsOfFilters = new IdentityHashMap<>();
+        Set<String> namedBoards = new HashSet<>();
+        for (Filter filter : all) {
+            if (!filter.enabled) continue;
+
+            enabled.add(filter);
+            if (filter.action == FilterAction.WATCH.id) {
+                watch.add(filter);
+            }
+            if (filter.allBoards || TextUtils.isEmpty(filter.boards)) {
+                everyBoard.add(filter);
+            } else {
+                Set<String> boards = parseBoards(filter.boards);
+                boardsOfFilters.put(filter, boards);
+                namedBoards.addAll(boards);
+            }
+        }
+        allFilters = Collections.unmodifiableList(all);
+        enabledFilters = Collections.unmodifiableList(enabled);
+        enabledWatchFilters = Collections.unmodifiableList(watch);
+
+        otherBoardFilters = new BoardFilters(everyBoard);
+        for (String board : namedBoards) {
+            List<Filter> forBoard = new ArrayList<>();
+            for (Filter filter : enabled) {
+                Set<String> boards = boardsOfFilters.get(filter);
+                if (boards == null || boards.contains(board)) {
+                    forBoard.add(filter);
+                }
+            }
+            boardFilters.put(board, new BoardFilters(forBoard));
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return all filters, in order
+     */
+    public List<Filter> getAllFilters() {
+        return allFilters;
+    }
+
+    /**
+     * @return the enabled filters, in order
+     */
+    public List<Filter> getEnabledFilters() {
+        return enabledFilters;
+    }
+
+    /**
+     * @return the enabled filters that watch for threads, in order
+     */
+    public List<Filter> getEnabledWatchFilters() {
+        return enabledWatchFilters;
+    }
+
+    /**
+     * @return the enabled filters that apply to the board, in order
+     */
+    public List<Filter> getEnabledFilters(Board board) {
+        return filtersFor(board).filters;
+    }
+
+    /**
+     * @return true if any enabled filter that watches for threads applies to the board
+     */
+    public boolean hasWatchFilters(Board board) {
+        return filtersFor(board).hasWatchFilters;
+    }
+
+    /**
+     * @return the enabled filters that apply to the board, compiled; boards with the same filters share a matcher
+     */
+    public FilterMatcher getFilterMatcher(Board board) {
+        BoardFilters forBoard = filtersFor(board);
+        FilterMatcher matcher = forBoard.matcher;
+        if (matcher == null) {
+            // compiling twice at the same time is harmless, both give the same result
+            matcher = filterEngine.compileFilters(forBoard.filters);
+            forBoard.matcher = matcher;
+        }
+        return matcher;
+    }
+
+    private BoardFilters filtersFor(Board board) {
+        BoardFilters forBoard = boardFilters.get(board.siteId + ":" + board.code);
+        return forBoard != null ? forBoard : otherBoardFilters;
+    }
+
+    /**
+     * Parse a comma separated list of unique board ids the way
+     * {@link com.github.adamantcheese.chan.ui.helper.BoardHelper#matchesUniqueId(Board, String)} reads them.
+     */
+    private static Set<String> parseBoards(String boards) {
+        Set<String> parsed = new HashSet<>();
+        for (String uniqueId : boards.split(",")) {
+            if (!uniqueId.contains(":")) {
+                parsed.add("0:" + uniqueId);
+                continue;
+            }
+
+            String[] splitted = uniqueId.split(":");
+            if (splitted.length != 2) continue;
+            try {
+                parsed.add(Integer.parseInt(splitted[0]) + ":" + splitted[1]);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return parsed;
+    }
+
+    private static class BoardFilters {
+        private final List<Filter> filters;
+        private final boolean hasWatchFilters;
+        private volatile FilterMatcher matcher;
+
+        private BoardFilters(List<Filter> filters) {
+            this.filters = Collections.unmodifiableList(filters);
+            boolean watch = false;
+            for (Filter filter : filters) {
+                watch |= filter.action == FilterAction.WATCH.id;
+            }
+            hasWatchFilters = watch;
+        }
+    }
+}
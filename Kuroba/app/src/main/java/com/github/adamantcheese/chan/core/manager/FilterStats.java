@@ -0,0 +1,94 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import androidx.annotation.AnyThread;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How a single filter has done since the app was started: the time spent matching its pattern, how many posts it
+ * matched, and whether it was turned off for taking too long on a single post.
+ */
+@AnyThread
+public class FilterStats {
+    private final AtomicLong matchNanos = new AtomicLong();
+    private final AtomicInteger hits = new AtomicInteger();
+    // how many matches went over the budget since the filter was last enabled
+    private final AtomicInteger overruns = new AtomicInteger();
+    // the time of the match that turned the filter off, or 0 if it wasn't
+    private final AtomicLong overBudgetNanos = new AtomicLong();
+    // if the filter was saved as disabled for going over the budget
+    private volatile boolean disableSaved;
+
+    void addMatchTime(long nanos) {
+        matchNanos.addAndGet(nanos);
+    }
+
+    void addHit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * @return how many matches went over the budget since the filter was last enabled, including this one
+     */
+    int addOverrun() {
+        return overruns.incrementAndGet();
+    }
+
+    /**
+     * @return true if this is the first time the filter is turned off since it was last enabled
+     */
+    boolean setOverBudget(long nanos) {
+        return overBudgetNanos.compareAndSet(0, Math.max(1, nanos));
+    }
+
+    void setDisableSaved() {
+        disableSaved = true;
+    }
+
+    boolean isDisableSaved() {
+        return disableSaved;
+    }
+
+    void clearOverBudget() {
+        disableSaved = false;
+        overruns.set(0);
+        overBudgetNanos.set(0);
+    }
+
+    public long getMatchTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(matchNanos.get());
+    }
+
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    public boolean isOverBudget() {
+        return overBudgetNanos.get() != 0;
+    }
+
+    /**
+     * @return how long the match that turned the filter off took
+     */
+    public long getOverBudgetMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(overBudgetNanos.get());
+    }
+}
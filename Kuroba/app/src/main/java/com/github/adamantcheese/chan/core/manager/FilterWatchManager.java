@@ -77,7 +77,7 @@ public class FilterWatchManager
         this.filterEngine = filterEngine;
         this.watchManager = watchManager;
 
-        if (!filterEngine.getEnabledWatchFilters().isEmpty()) {
+        if (!filterEngine.getSnapshot().getEnabledWatchFilters().isEmpty()) {
             WakeManager.getInstance().registerWakeable(this);
         }
 
@@ -94,7 +94,7 @@ public class FilterWatchManager
     @Subscribe
     public void onEvent(RefreshUIMessage message) {
         if (message.reason != FILTERS_CHANGED) return;
-        if (filterEngine.getEnabledWatchFilters().isEmpty()) {
+        if (filterEngine.getSnapshot().getEnabledWatchFilters().isEmpty()) {
             WakeManager.getInstance().unregisterWakeable(this);
         } else {
             WakeManager.getInstance().registerWakeable(this);
@@ -114,7 +114,7 @@ public class FilterWatchManager
                                 + StringUtils.getCurrentTimeDefaultLocale()
                 );
                 for (ChanThreadLoader loader : filterLoaders.keySet()) {
-                    loader.requestFreshData();
+                    loader.requestFreshData(NetUtilsClasses.Priority.BACKGROUND);
                 }
             } else {
                 WakeManager.getInstance().manageLock(false, FilterWatchManager.this);
@@ -129,12 +129,11 @@ public class FilterWatchManager
         filterLoaders.clear();
         //get a set of boards to background load
         Set<Board> boards = new HashSet<>();
+        FilterSnapshot filterSnapshot = filterEngine.getSnapshot();
         for (BoardRepository.SiteBoards siteBoard : boardRepository.getSaved()) {
             for (Board b : siteBoard.boards) {
-                for (Filter f : filterEngine.getEnabledWatchFilters()) {
-                    if (filterEngine.matchesBoard(f, b)) {
-                        boards.add(b);
-                    }
+                if (filterSnapshot.hasWatchFilters(b)) {
+                    boards.add(b);
                 }
             }
         }
@@ -830,11 +830,11 @@ public class WatchManager
                 if (fromBackground) {
                     // Always load regardless of timer, since the time left is not accurate for 15min+ intervals
                     chanLoader.clearTimer();
-                    chanLoader.requestAdditionalData();
+                    chanLoader.requestAdditionalData(NetUtilsClasses.Priority.BACKGROUND);
                     return true;
                 } else {
                     if (chanLoader.getTimeUntilLoadMore() < 0L) {
-                        chanLoader.requestAdditionalData();
+                        chanLoader.requestAdditionalData(NetUtilsClasses.Priority.BACKGROUND);
                         return true;
                     }
                     return false;
@@ -22,6 +22,8 @@ import android.text.SpannableStringBuilder;
 import android.text.style.StyleSpan;
 import android.text.style.UnderlineSpan;
 
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.repository.PageRepository;
@@ -44,6 +46,9 @@ public class ChanThread {
     // there is no easy way to fix them right now) and to avoid copying the whole list of posts
     // every time it is needed somewhere.
     private List<Post> posts;
+    // the replies between the posts, if known; always for the current list of posts
+    @Nullable
+    private ReplyGraph replyGraph;
     private boolean closed = false;
     private boolean archived = false;
 
@@ -80,8 +85,14 @@ public class ChanThread {
         return posts;
     }
 
-    public synchronized void setNewPosts(List<Post> newPosts) {
+    @Nullable
+    public synchronized ReplyGraph getReplyGraph() {
+        return replyGraph;
+    }
+
+    public synchronized void setNewPosts(List<Post> newPosts, @Nullable ReplyGraph replyGraph) {
         this.posts = Collections.unmodifiableList(new ArrayList<>(newPosts));
+        this.replyGraph = replyGraph;
     }
 
     /**
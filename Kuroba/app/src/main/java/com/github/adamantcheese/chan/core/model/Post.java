@@ -22,12 +22,12 @@ import android.text.SpannableStringBuilder;
 import androidx.annotation.AnyThread;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.features.embedding.Embeddable;
 import com.github.adamantcheese.chan.utils.Logger;
-import com.vdurmont.emoji.EmojiParser;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
@@ -39,9 +39,13 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.github.adamantcheese.chan.utils.StringUtils.parseEmojiToUnicode;
+
 /**
  * Contains all data needed to represent a single post.<br>
- * All {@code final} fields are thread-safe.
+ * All {@code final} fields are thread-safe.<br>
+ * A refresh of a thread reuses the post instances that didn't change, so a loaded post is shared with whatever still
+ * shows the previous version of the thread; the parser copies a post before changing its deleted flag or replies.
  */
 public class Post
         extends Embeddable
@@ -67,6 +71,12 @@ public class Post
 
     public final List<PostImage> images = new CopyOnWriteArrayList<>();
 
+    /**
+     * The images as they were before a filter on image hashes removed some of them; null if no filter did.
+     */
+    @Nullable
+    public final List<PostImage> unfilteredImages;
+
     public final String tripcode;
 
     public final String id;
@@ -112,7 +122,7 @@ public class Post
      */
     public final List<Integer> repliesFrom = new CopyOnWriteArrayList<>();
 
-    // These members may only mutate on the main thread.
+    // These members may only mutate on the main thread, or on a copy of a post that isn't shown yet.
     private boolean sticky;
     private boolean closed;
     private boolean archived;
@@ -149,6 +159,11 @@ public class Post
         if (builder.images != null) {
             images.addAll(builder.images);
         }
+        if (builder.unfilteredImages != null) {
+            unfilteredImages = Collections.unmodifiableList(new ArrayList<>(builder.unfilteredImages));
+        } else {
+            unfilteredImages = null;
+        }
 
         if (builder.httpIcons != null) {
             httpIcons = Collections.unmodifiableList(builder.httpIcons);
@@ -382,7 +397,22 @@ public class Post
     @NonNull
     @Override
     public Post clone() {
-        Post clone = new Builder().board(board)
+        return withFilters(unfilteredBuilder().filter(
+                filterHighlightedColor,
+                filterStub,
+                filterRemove,
+                filterWatch,
+                filterReplies,
+                filterOnlyOP,
+                filterSaved
+        ));
+    }
+
+    /**
+     * @return a builder with everything in this post except for what the filters set, to apply the filters again
+     */
+    public Builder unfilteredBuilder() {
+        return new Builder().board(board)
                 .no(no)
                 .opId(opId)
                 .op(isOP)
@@ -399,27 +429,40 @@ public class Post
                 .tripcode(tripcode)
                 .setUnixTimestampSeconds(time)
                 .images(images)
+                .unfilteredImages(unfilteredImages)
                 .posterId(id)
                 .moderatorCapcode(capcode)
                 .setHttpIcons(httpIcons)
-                .filter(
-                        filterHighlightedColor,
-                        filterStub,
-                        filterRemove,
-                        filterWatch,
-                        filterReplies,
-                        filterOnlyOP,
-                        filterSaved
-                )
                 .isSavedReply(isSavedReply)
                 .spans(subjectSpan, nameTripcodeIdCapcodeSpan)
-                .repliesTo(repliesTo)
-                .build();
-        clone.repliesFrom.addAll(repliesFrom);
-        clone.setTitle(getTitle());
-        clone.deleted.set(deleted.get());
-        clone.embedComplete.set(embedComplete.get());
-        return clone;
+                .repliesTo(repliesTo);
+    }
+
+    /**
+     * @param filtered a builder of this post, from {@link #unfilteredBuilder()}
+     * @return true if the filter flags of the builder are the same as the ones of this post
+     */
+    public boolean hasSameFilters(Builder filtered) {
+        return filterHighlightedColor == filtered.filterHighlightedColor
+                && filterStub == filtered.filterStub
+                && filterRemove == filtered.filterRemove
+                && filterWatch == filtered.filterWatch
+                && filterReplies == filtered.filterReplies
+                && filterOnlyOP == filtered.filterOnlyOP
+                && filterSaved == filtered.filterSaved;
+    }
+
+    /**
+     * @param filtered a builder of this post, from {@link #unfilteredBuilder()}
+     * @return a copy of this post with the filter flags of the builder
+     */
+    public Post withFilters(Builder filtered) {
+        Post copy = filtered.build();
+        copy.repliesFrom.addAll(repliesFrom);
+        copy.setTitle(getTitle());
+        copy.deleted.set(deleted.get());
+        copy.embedComplete.set(embedComplete.get());
+        return copy;
     }
 
     @Override
@@ -466,6 +509,8 @@ public class Post
         public boolean closed;
         public boolean archived;
         public long lastModified = -1L;
+        // only set for OPs of threads that have a tail endpoint available
+        public int tailSize = -1;
 
         public String subject = "";
         public String name = "";
@@ -474,6 +519,9 @@ public class Post
 
         public long unixTimestampSeconds = -1L;
         public List<PostImage> images = new CopyOnWriteArrayList<>();
+        // set by the filters when they remove images, so the filters can be matched against all of them again
+        @Nullable
+        public List<PostImage> unfilteredImages;
 
         public List<PostHttpIcon> httpIcons;
 
@@ -490,6 +538,8 @@ public class Post
         public boolean filterOnlyOP;
         public boolean filterSaved;
         public boolean isSavedReply;
+        // set when the comment is already parsed into spans, so the post parser should leave it as it is
+        public boolean commentParsed;
 
         public CharSequence subjectSpan;
         public CharSequence nameTripcodeIdCapcodeSpan;
@@ -559,6 +609,11 @@ public class Post
             return this;
         }
 
+        public Builder tailSize(int tailSize) {
+            this.tailSize = tailSize;
+            return this;
+        }
+
         public Builder subject(String subject) {
             this.subject = subject;
             return this;
@@ -566,7 +621,7 @@ public class Post
 
         public Builder name(String name) {
             if (ChanSettings.enableEmoji.get()) {
-                this.name = EmojiParser.parseToUnicode(name);
+                this.name = parseEmojiToUnicode(name);
             } else {
                 this.name = name;
             }
@@ -583,6 +638,12 @@ public class Post
             return this;
         }
 
+        public Builder parsedComment(SpannableStringBuilder comment) {
+            this.comment = comment;
+            this.commentParsed = true;
+            return this;
+        }
+
         public Builder tripcode(String tripcode) {
             this.tripcode = tripcode;
             return this;
@@ -605,6 +666,11 @@ public class Post
             return this;
         }
 
+        public Builder unfilteredImages(@Nullable List<PostImage> unfilteredImages) {
+            this.unfilteredImages = unfilteredImages == null ? null : new ArrayList<>(unfilteredImages);
+            return this;
+        }
+
         public Builder posterId(String posterId) {
             this.posterId = posterId;
 
@@ -701,12 +767,14 @@ public class Post
                     .closed(closed)
                     .archived(archived)
                     .lastModified(lastModified)
+                    .tailSize(tailSize)
                     .subject(subject)
                     .name(name)
                     .comment(comment)
                     .tripcode(tripcode)
                     .setUnixTimestampSeconds(unixTimestampSeconds)
                     .images(images)
+                    .unfilteredImages(unfilteredImages)
                     .posterId(posterId)
                     .moderatorCapcode(moderatorCapcode)
                     .setHttpIcons(httpIcons)
@@ -34,12 +34,12 @@ import androidx.annotation.Nullable;
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.ui.cell.PostViewMovementMethod;
+import com.github.adamantcheese.chan.ui.text.ThemedSpan;
 import com.github.adamantcheese.chan.ui.theme.Theme;
 
 import java.util.Objects;
 
 import static com.github.adamantcheese.chan.utils.AndroidUtils.dp;
-import static com.github.adamantcheese.chan.utils.AndroidUtils.getAttrColor;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getContrastColor;
 
 /**
@@ -49,7 +49,7 @@ import static com.github.adamantcheese.chan.utils.AndroidUtils.getContrastColor;
  */
 public class PostLinkable
         extends ClickableSpan
-        implements LineBackgroundSpan {
+        implements LineBackgroundSpan, ThemedSpan {
     public enum Type {
         QUOTE,              // value: Integer, post num in text
         LINK,               // value: String, the link text url
@@ -65,14 +65,13 @@ public class PostLinkable
         OTHER               // value: Object, a catch-all for any other linkables; value is always new Object()
     }
 
-    private final int quoteColor;
-    private final int spoilerColor;
     public final Object value; // the value associated with the text, see enum above
     public final Type type;
     public PostLinkableCallback callback;
 
     private boolean spoilerVisible = ChanSettings.revealTextSpoilers.get();
     private int markedNo = -1;
+    private Theme boundTheme;
 
     private final Paint dashPaint = new Paint();
     private final Path dashPath = new Path();
@@ -81,9 +80,7 @@ public class PostLinkable
     private static final float UNDERLINE_THICKNESS = dp(2.392578125f); // same as getUnderlineThickness in API 29+
     private static final float BASELINE_OFFSET = dp(1.025390625f); // same as getUnderlinePosition in API 29+
 
-    public PostLinkable(@NonNull Theme theme, Object value, Type type) {
-        quoteColor = getAttrColor(theme.resValue, R.attr.post_quote_color);
-        spoilerColor = getAttrColor(theme.resValue, R.attr.post_spoiler_color);
+    public PostLinkable(Object value, Type type) {
         this.value = value;
         this.type = type;
 
@@ -102,6 +99,11 @@ public class PostLinkable
         this.markedNo = markedNo;
     }
 
+    @Override
+    public void bindTheme(@Nullable Theme theme) {
+        boundTheme = theme;
+    }
+
     public void setCallback(PostLinkableCallback callback) {
         this.callback = callback;
     }
@@ -130,11 +132,12 @@ public class PostLinkable
             case THREAD:
             case ARCHIVE:
             case BOARD:
-                textPaint.setColor(quoteColor);
+                textPaint.setColor(ThemedSpan.drawTheme(boundTheme).getAttrColor(R.attr.post_quote_color));
                 textPaint.setUnderlineText(!shouldDrawDashedUnderline());
                 break;
             // spoiler specific
             case SPOILER:
+                int spoilerColor = ThemedSpan.drawTheme(boundTheme).getAttrColor(R.attr.post_spoiler_color);
                 textPaint.bgColor = spoilerColor;
                 textPaint.setColor(spoilerVisible ? getContrastColor(spoilerColor) : spoilerColor);
                 break;
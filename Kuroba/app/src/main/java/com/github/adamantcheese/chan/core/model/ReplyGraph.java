@@ -0,0 +1,176 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Which posts of a thread reply to which, in compressed sparse row form: posts get a dense index in thread order, and
+ * the indexes of the posts that post i replies to are {@code getTarget(getRepliesStart(i) .. getRepliesEnd(i) - 1)}.
+ * <br>
+ * A graph is never changed after it is made. Appending posts makes a new graph, which shares the arrays of the old one
+ * when nothing else was appended to those yet, so a refresh only costs as much as the posts and replies it adds.
+ * Post numbers must be ascending in thread order; replies to posts that aren't in the thread are left out.
+ */
+public class ReplyGraph {
+    private static final int MIN_CAPACITY = 64;
+
+    private final Storage storage;
+    // the arrays as they were when this graph was made; appending may replace the arrays of the storage
+    private final int[] nos;
+    private final int[] edgeStart;
+    private final int[] targets;
+    private final int postCount;
+    private final int edgeCount;
+    // what the removed posts were when this graph was made; replies from removed posts aren't shown, so the replies
+    // that were taken from this graph depend on it
+    private final long removedPostsHash;
+
+    private ReplyGraph(Storage storage, int postCount, int edgeCount, long removedPostsHash) {
+        this.storage = storage;
+        nos = storage.nos;
+        edgeStart = storage.edgeStart;
+        targets = storage.targets;
+        this.postCount = postCount;
+        this.edgeCount = edgeCount;
+        this.removedPostsHash = removedPostsHash;
+    }
+
+    /**
+     * @return the graph of the given posts, or null if their numbers aren't ascending
+     */
+    @Nullable
+    public static ReplyGraph build(List<Post> posts, long removedPostsHash) {
+        return new ReplyGraph(new Storage(posts.size(), 0), 0, 0, removedPostsHash).append(posts, removedPostsHash);
+    }
+
+    /**
+     * @param posts            posts that come after all posts of this graph
+     * @param removedPostsHash the removed posts the new graph is made for
+     * @return a graph of the posts of this graph and the given posts, or null if their numbers aren't ascending
+     */
+    @Nullable
+    public ReplyGraph append(List<Post> posts, long removedPostsHash) {
+        int lastNo = postCount == 0 ? Integer.MIN_VALUE : nos[postCount - 1];
+        int newEdges = 0;
+        for (Post post : posts) {
+            if (post.no <= lastNo) return null;
+            lastNo = post.no;
+            newEdges += post.repliesTo.size();
+        }
+
+        synchronized (storage) {
+            Storage target = storage;
+            if (target.usedPosts != postCount || target.usedEdges != edgeCount) {
+                // another graph was already appended to these arrays, this one branches off
+                target = new Storage(postCount + posts.size(), edgeCount + newEdges);
+                System.arraycopy(nos, 0, target.nos, 0, postCount);
+                System.arraycopy(edgeStart, 0, target.edgeStart, 0, postCount + 1);
+                System.arraycopy(targets, 0, target.targets, 0, edgeCount);
+            }
+            target.ensureCapacity(postCount + posts.size(), edgeCount + newEdges);
+
+            int count = postCount;
+            for (Post post : posts) {
+                target.nos[count++] = post.no;
+            }
+
+            int edges = edgeCount;
+            int index = postCount;
+            for (Post post : posts) {
+                for (int repliedTo : post.repliesTo) {
+                    int repliedToIndex = Arrays.binarySearch(target.nos, 0, count, repliedTo);
+                    if (repliedToIndex >= 0) {
+                        target.targets[edges++] = repliedToIndex;
+                    }
+                }
+                target.edgeStart[++index] = edges;
+            }
+
+            target.usedPosts = count;
+            target.usedEdges = edges;
+            return new ReplyGraph(target, count, edges, removedPostsHash);
+        }
+    }
+
+    /**
+     * @return a hash of the removed posts this graph was made for, as given by its creator
+     */
+    public long getRemovedPostsHash() {
+        return removedPostsHash;
+    }
+
+    public int size() {
+        return postCount;
+    }
+
+    public int getNo(int index) {
+        return nos[index];
+    }
+
+    /**
+     * @return the index of the post with the given number, or a negative number if it isn't in this graph
+     */
+    public int indexOf(int no) {
+        int index = Arrays.binarySearch(nos, 0, postCount, no);
+        return index >= 0 ? index : -1;
+    }
+
+    public int getRepliesStart(int index) {
+        return edgeStart[index];
+    }
+
+    public int getRepliesEnd(int index) {
+        return edgeStart[index + 1];
+    }
+
+    /**
+     * @return the index of the post that is replied to by the given edge
+     */
+    public int getTarget(int edge) {
+        return targets[edge];
+    }
+
+    private static class Storage {
+        private int[] nos;
+        // one more than there are posts; the replies of the last post end at the last entry
+        private int[] edgeStart;
+        private int[] targets;
+        private int usedPosts;
+        private int usedEdges;
+
+        private Storage(int posts, int edges) {
+            nos = new int[Math.max(MIN_CAPACITY, posts)];
+            edgeStart = new int[nos.length + 1];
+            targets = new int[Math.max(MIN_CAPACITY, edges)];
+        }
+
+        private void ensureCapacity(int posts, int edges) {
+            if (posts > nos.length) {
+                int capacity = Math.max(posts, nos.length * 2);
+                nos = Arrays.copyOf(nos, capacity);
+                edgeStart = Arrays.copyOf(edgeStart, capacity + 1);
+            }
+            if (edges > targets.length) {
+                targets = Arrays.copyOf(targets, Math.max(edges, targets.length * 2));
+            }
+        }
+    }
+}
@@ -2,20 +2,43 @@ package com.github.adamantcheese.chan.core.net;
 
 import androidx.annotation.NonNull;
 
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import okhttp3.Dns;
 
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 // This class is a modified copy of https://github.com/yschimke/okurl/blob/b24caf077223cf54e2ab26589839e5ba2205c691/src/main/java/com/baulsupp/oksocial/network/DnsSelector.java
 
+/**
+ * Lookups are cached for a while, failed ones for a shorter while, and concurrent lookups for the same host share a
+ * single system lookup. Hosts can be resolved ahead of time with {@link #prefetch(Collection)}.
+ */
 public class DnsSelector
         implements Dns {
+    private static final long POSITIVE_TTL_MS = MINUTES.toMillis(5);
+    private static final long NEGATIVE_TTL_MS = SECONDS.toMillis(30);
+
     public Mode mode;
 
+    private final Map<String, CachedLookup> cache = new HashMap<>();
+    private final Map<String, FutureTask<List<InetAddress>>> inFlight = new HashMap<>();
+    // incremented when the cache is cleared; lookups started before that aren't stored
+    private int generation;
+
     public DnsSelector(Mode mode) {
         this.mode = mode;
     }
@@ -24,7 +47,7 @@ public class DnsSelector
     @Override
     public List<InetAddress> lookup(@NonNull String hostname)
             throws UnknownHostException {
-        List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+        List<InetAddress> addresses = cachedLookup(hostname);
         if (mode == Mode.SYSTEM) {
             return addresses;
         }
@@ -39,6 +62,99 @@ public class DnsSelector
         return resultAddresses;
     }
 
+    private List<InetAddress> cachedLookup(String hostname)
+            throws UnknownHostException {
+        FutureTask<List<InetAddress>> lookup;
+        boolean owner = false;
+        int lookupGeneration;
+        synchronized (this) {
+            lookupGeneration = generation;
+            CachedLookup cached = cache.get(hostname);
+            if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+                if (cached.failure != null) throw cached.failure;
+                return cached.addresses;
+            }
+            lookup = inFlight.get(hostname);
+            if (lookup == null) {
+                lookup = new FutureTask<>(() -> Dns.SYSTEM.lookup(hostname));
+                inFlight.put(hostname, lookup);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            lookup.run();
+        }
+
+        try {
+            List<InetAddress> addresses = lookup.get();
+            if (owner) {
+                store(hostname, lookup, lookupGeneration, new CachedLookup(addresses, null, POSITIVE_TTL_MS));
+            }
+            return addresses;
+        } catch (ExecutionException e) {
+            UnknownHostException failure;
+            if (e.getCause() instanceof UnknownHostException) {
+                failure = (UnknownHostException) e.getCause();
+            } else {
+                failure = new UnknownHostException(hostname);
+                failure.initCause(e.getCause());
+            }
+            if (owner) {
+                store(hostname, lookup, lookupGeneration, new CachedLookup(null, failure, NEGATIVE_TTL_MS));
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException(hostname);
+        }
+    }
+
+    private synchronized void store(
+            String hostname, FutureTask<List<InetAddress>> lookup, int lookupGeneration, CachedLookup result
+    ) {
+        if (lookupGeneration != generation) return;
+        cache.put(hostname, result);
+        inFlight.remove(hostname, lookup);
+    }
+
+    /**
+     * Resolve the given hosts in the background, so that the first requests to them don't have to wait for it.
+     */
+    public void prefetch(Collection<String> hostnames) {
+        for (String hostname : hostnames) {
+            BackgroundUtils.runOnBackgroundThread(() -> {
+                try {
+                    cachedLookup(hostname);
+                } catch (UnknownHostException e) {
+                    Logger.d(this, "Failed to prefetch " + hostname);
+                }
+            });
+        }
+    }
+
+    /**
+     * Forget all cached lookups, for example when the network changed. Lookups that are still running finish for
+     * whoever is waiting on them, but their results aren't cached and new requests start a lookup of their own.
+     */
+    public synchronized void clearCache() {
+        cache.clear();
+        inFlight.clear();
+        generation++;
+    }
+
+    private static class CachedLookup {
+        private final List<InetAddress> addresses;
+        private final UnknownHostException failure;
+        private final long expiresAt;
+
+        private CachedLookup(List<InetAddress> addresses, UnknownHostException failure, long ttlMs) {
+            this.addresses = addresses;
+            this.failure = failure;
+            this.expiresAt = System.currentTimeMillis() + ttlMs;
+        }
+    }
+
     public enum Mode {
         SYSTEM,
         IPV4_ONLY
@@ -7,6 +7,7 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import java.io.IOException;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.HttpUrl;
@@ -19,9 +20,13 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * This interceptor follows up http-equiv redirects when applicable.
+ * <p>Only the start of the document is looked at, and it is only parsed if it has a meta tag that could be a refresh.
  */
 public class HttpEquivRefreshInterceptor
         implements Interceptor {
+    // refresh tags belong in the head, which is near the start of a document
+    private static final long SCAN_LIMIT = 8 * 1024;
+
     @NotNull
     @Override
     public Response intercept(@NotNull Chain chain)
@@ -31,10 +36,15 @@ public class HttpEquivRefreshInterceptor
             String contentType = initialResponse.header("Content-Type");
             if (contentType != null && contentType.contains("text/html")) {
                 BufferedSource source = initialResponse.body().source().peek();
-                // we're looking for something like <meta http-equiv="refresh" content="0;URL='http://www.example.com/'"/>
-                Document document = Jsoup.parse(source.readString(UTF_8));
+                source.request(SCAN_LIMIT);
+                String start = source.readString(Math.min(SCAN_LIMIT, source.getBuffer().size()), UTF_8);
                 source.close();
 
+                // we're looking for something like <meta http-equiv="refresh" content="0;URL='http://www.example.com/'"/>
+                int headEnd = findRefreshCandidateEnd(start);
+                if (headEnd == -1) return initialResponse;
+                Document document = Jsoup.parse(start.substring(0, headEnd));
+
                 Elements metaTags = document.head().getElementsByTag("meta");
 
                 for (Element metaTag : metaTags) {
@@ -73,4 +83,32 @@ public class HttpEquivRefreshInterceptor
         }
         return initialResponse;
     }
+
+    /**
+     * Scans through the tags at the start of a document, skipping comments, until the head is over.
+     *
+     * @return the index right after the first meta tag that mentions a refresh, or -1 if there isn't one
+     */
+    private static int findRefreshCandidateEnd(String document) {
+        int i = 0;
+        while ((i = document.indexOf('<', i)) != -1) {
+            if (document.startsWith("<!--", i)) {
+                int commentEnd = document.indexOf("-->", i + 4);
+                if (commentEnd == -1) return -1;
+                i = commentEnd + 3;
+                continue;
+            }
+            int tagEnd = document.indexOf('>', i);
+            if (tagEnd == -1) return -1;
+            if (document.regionMatches(true, i, "</head", 0, 6) || document.regionMatches(true, i, "<body", 0, 5)) {
+                return -1;
+            }
+            if (document.regionMatches(true, i, "<meta", 0, 5)) {
+                String tag = document.substring(i, tagEnd).toLowerCase(Locale.ENGLISH);
+                if (tag.contains("http-equiv") && tag.contains("refresh")) return tagEnd + 1;
+            }
+            i = tagEnd + 1;
+        }
+        return -1;
+    }
 }
@@ -15,6 +15,7 @@ import com.github.adamantcheese.chan.BuildConfig;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.BitmapResult;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.MainThreadResponseResult;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.OkHttpClientWithUtils;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.Priority;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.http.HttpCall;
@@ -36,6 +37,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -54,6 +56,7 @@ import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okhttp3.internal.http2.StreamResetException;
 import okhttp3.logging.HttpLoggingInterceptor;
+import okio.Timeout;
 
 import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
 import static com.github.adamantcheese.chan.core.net.DnsSelector.Mode.IPV4_ONLY;
@@ -65,6 +68,9 @@ import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.HTML_CONVER
 import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.HttpCodeException;
 import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.JSON_CONVERTER;
 import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.ONE_DAY_CACHE;
+import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.Priority.INTERACTIVE;
+import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.Priority.PREFETCH;
+import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.Priority.VISIBLE_MEDIA;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
 import static java.lang.Runtime.getRuntime;
 import static okhttp3.Protocol.HTTP_1_1;
@@ -81,6 +87,9 @@ public class NetUtils {
                     : (long) ChanSettings.fileCacheSize.get() * MB
     );
 
+    // Timings for all requests made through the application client, for debugging
+    public static final NetworkTimings networkTimings = new NetworkTimings();
+
     public static final OkHttpClientWithUtils applicationClient =
             new OkHttpClientWithUtils(new OkHttpClient.Builder().cache(OK_HTTP_CACHE)
                     .protocols(ChanSettings.okHttpAllowHttp2.get()
@@ -88,6 +97,7 @@ public class NetUtils {
                             : Collections.singletonList(HTTP_1_1))
                     .dns(new DnsSelector(ChanSettings.okHttpAllowIpv6.get() ? SYSTEM : IPV4_ONLY))
                     .proxy(ChanSettings.proxy)
+                    .eventListenerFactory(networkTimings)
                     .cookieJar(new WebviewSyncCookieManager(new PersistentCookieJar(new SetCookieCache(),
                             new SharedPrefsCookiePersistor(getAppContext())
                     )))
@@ -95,7 +105,12 @@ public class NetUtils {
                         // interceptor to add the User-Agent for all requests
                         Request request = chain.request().newBuilder().header("User-Agent", USER_AGENT).build();
                         return chain.proceed(request);
-                    }));
+                    })
+                    // progress for requests tagged with a progress listener
+                    .addNetworkInterceptor(new ProgressResponseBody.ProgressInterceptor()));
+
+    // All enqueued requests made through this class go through this scheduler
+    public static final RequestScheduler requestScheduler = new RequestScheduler();
 
     /**
      * @param processor The cookie processor to use for this interceptor
@@ -323,20 +338,15 @@ public class NetUtils {
             performBitmapSuccess(url, cachedBitmap, true, mainThread);
             return null;
         }
-        OkHttpClient client = applicationClient.getHttpRedirectClient();
+        Request.Builder builder = new Request.Builder().url(url)
+                .addHeader("Referer", url.toString())
+                .cacheControl(BITMAP_CACHE)
+                .tag(Priority.class, VISIBLE_MEDIA);
+        Call call = applicationClient.getHttpRedirectClient()
+                .newCall(ProgressResponseBody.tag(builder, progressListener).build());
         if (timeoutMs != -1) {
-            client = client.newBuilder().callTimeout(timeoutMs, TimeUnit.MILLISECONDS).build();
+            call.timeout().timeout(timeoutMs, TimeUnit.MILLISECONDS);
         }
-        client = client.newBuilder().addNetworkInterceptor(chain -> {
-            Response originalResponse = chain.proceed(chain.request());
-            return originalResponse.newBuilder()
-                    .body(new ProgressResponseBody(originalResponse, progressListener))
-                    .build();
-        }).build();
-        Call call = client.newCall(new Request.Builder().url(url)
-                .addHeader("Referer", url.toString())
-                .cacheControl(new CacheControl.Builder().maxStale(365, TimeUnit.DAYS).build())
-                .build());
         Callback callback = new Callback() {
             @Override
             public void onFailure(@NotNull Call call, @NotNull IOException e) {
@@ -403,11 +413,13 @@ public class NetUtils {
             }
         };
         if (enqueue) {
-            call.enqueue(callback);
+            requestScheduler.enqueue(call, callback, VISIBLE_MEDIA);
         }
         return new Pair<>(call, callback);
     }
 
+    private static final CacheControl BITMAP_CACHE = new CacheControl.Builder().maxStale(365, TimeUnit.DAYS).build();
+
     private static void checkBitmap(HttpUrl url, Bitmap result, boolean mainThread) {
         if (result == null) {
             performBitmapFailure(url, new NullPointerException("Bitmap returned is null"), mainThread);
@@ -560,6 +572,64 @@ public class NetUtils {
         return makeRequest(client, url, converter, result, progressListener, cacheControl, 0);
     }
 
+    /**
+     * Request something at the given priority, no timeout.
+     *
+     * @param url          The request URL.
+     * @param converter    The converter for the response.
+     * @param result       The callback for this call.
+     * @param cacheControl Set cache parameters for this request
+     * @param priority     The priority of this request
+     * @param <T>          Your result type, the something you're requesting
+     * @return An enequeued call. WILL RUN RESULT ON BACKGROUND OKHTTP THREAD!
+     */
+    public static <T> Call makeRequest(
+            @NonNull final OkHttpClient client,
+            @NonNull final HttpUrl url,
+            @NonNull final Converter<T, Response> converter,
+            @NonNull final ResponseResult<T> result,
+            @Nullable final ProgressResponseBody.ProgressListener progressListener,
+            @Nullable final CacheControl cacheControl,
+            @NonNull final Priority priority
+    ) {
+        return makeRequest(client, url, converter, result, progressListener, cacheControl, null, priority);
+    }
+
+    /**
+     * Request something with some extra request headers, no timeout.
+     *
+     * @param url          The request URL.
+     * @param converter    The converter for the response.
+     * @param result       The callback for this call.
+     * @param cacheControl Set cache parameters for this request
+     * @param extraHeaders Optional extra headers for this request, ie conditional request headers
+     * @param priority     The priority of this request
+     * @param <T>          Your result type, the something you're requesting
+     * @return An enequeued call. WILL RUN RESULT ON BACKGROUND OKHTTP THREAD!
+     */
+    public static <T> Call makeRequest(
+            @NonNull final OkHttpClient client,
+            @NonNull final HttpUrl url,
+            @NonNull final Converter<T, Response> converter,
+            @NonNull final ResponseResult<T> result,
+            @Nullable final ProgressResponseBody.ProgressListener progressListener,
+            @Nullable final CacheControl cacheControl,
+            @Nullable final Headers extraHeaders,
+            @NonNull final Priority priority
+    ) {
+        return makeCall(client,
+                url,
+                converter,
+                result,
+                progressListener,
+                cacheControl,
+                extraHeaders,
+                priority,
+                0,
+                true
+        ).first;
+    }
+
     /**
      * Request something, timeout.
      *
@@ -583,6 +653,32 @@ public class NetUtils {
         return makeCall(client, url, converter, result, progressListener, cacheControl, timeoutMs, true).first;
     }
 
+    /**
+     * @see #makeCall(OkHttpClient, HttpUrl, Converter, ResponseResult, ProgressResponseBody.ProgressListener, CacheControl, Headers, Priority, int, boolean)
+     */
+    public static <T> Pair<Call, Callback> makeCall(
+            @NonNull OkHttpClient client,
+            @NonNull final HttpUrl url,
+            @NonNull final Converter<T, Response> converter,
+            @NonNull final ResponseResult<T> result,
+            @Nullable final ProgressResponseBody.ProgressListener progressListener,
+            @Nullable final CacheControl cacheControl,
+            int timeoutMs,
+            boolean enqueue
+    ) {
+        return makeCall(client,
+                url,
+                converter,
+                result,
+                progressListener,
+                cacheControl,
+                null,
+                INTERACTIVE,
+                timeoutMs,
+                enqueue
+        );
+    }
+
     /**
      * This is the mothership of this class mostly, it does all the heavy lifting for you once provided the proper stuff
      * Generally don't use this! Use one of the wrapper methods instead. This class ensures that all responses are properly
@@ -594,6 +690,8 @@ public class NetUtils {
      * @param progressListener An optional progress listener for this response
      * @param <T>              Your result type
      * @param cacheControl     Set cache parameters for this request
+     * @param extraHeaders     Optional extra headers to add to this request
+     * @param priority         The priority of this call, if it is enqueued
      * @param timeoutMs        Optional timeout in milliseconds
      * @param enqueue          whether or not to enqueue this call as a step
      * @return An optionally enqueued call along with the callback it is associated with. WILL RUN RESULT ON BACKGROUND OKHTTP THREAD!
@@ -605,46 +703,72 @@ public class NetUtils {
             @NonNull final ResponseResult<T> result,
             @Nullable final ProgressResponseBody.ProgressListener progressListener,
             @Nullable final CacheControl cacheControl,
+            @Nullable final Headers extraHeaders,
+            @NonNull final Priority priority,
             int timeoutMs,
             boolean enqueue
     ) {
-        OkHttpClient.Builder clientBuilder = client.newBuilder();
-        clientBuilder.callTimeout(timeoutMs, TimeUnit.MILLISECONDS);
-        clientBuilder.addNetworkInterceptor(chain -> {
-            Response originalResponse = chain.proceed(chain.request());
-            return originalResponse.newBuilder()
-                    .body(new ProgressResponseBody(originalResponse, progressListener))
-                    .build();
-        });
-        Request.Builder builder = new Request.Builder().url(url).addHeader("Referer", url.toString());
+        ResponseResult<T> target = result;
+        SharedCall<T> sharedCall = null;
+        if (enqueue) {
+            // Non-enqueued calls are managed by the caller, only enqueued calls can be shared
+            Object converterToken = getConverterToken(converter);
+            String key = getSharedCallKey("GET", url, converterToken, cacheControl, extraHeaders);
+            synchronized (sharedCalls) {
+                //noinspection unchecked
+                SharedCall<T> existing = (SharedCall<T>) sharedCalls.get(key);
+                Call joined = existing == null ? null : existing.subscribe(converterToken, result);
+                if (joined != null) {
+                    return new Pair<>(joined, existing.callback);
+                }
+                sharedCall = new SharedCall<>(key, converterToken);
+                sharedCalls.put(key, sharedCall);
+            }
+            target = sharedCall;
+        }
+        final ResponseResult<T> finalTarget = target;
+
+        Request.Builder builder = new Request.Builder().url(url)
+                .addHeader("Referer", url.toString())
+                .tag(Priority.class, priority);
+        ProgressResponseBody.tag(builder, progressListener);
         if (cacheControl != null) {
             builder.cacheControl(cacheControl);
         }
-        Call call = clientBuilder.build().newCall(builder.build());
+        if (extraHeaders != null) {
+            for (int i = 0; i < extraHeaders.size(); i++) {
+                builder.header(extraHeaders.name(i), extraHeaders.value(i));
+            }
+        }
+        // the timeout is set on the call itself, so the client can be used as is
+        Call call = client.newCall(builder.build());
+        call.timeout().timeout(timeoutMs, TimeUnit.MILLISECONDS);
         Callback callback = new Callback() {
             @Override
             public void onFailure(@NotNull Call call, @NotNull IOException e) {
-                result.onFailure(e);
+                finalTarget.onFailure(e);
             }
 
             @Override
             public void onResponse(@NotNull Call call, @NotNull Response response) {
                 try (Response r = response) {
                     if (!response.isSuccessful()) {
-                        result.onFailure(new HttpCodeException(response));
+                        finalTarget.onFailure(new HttpCodeException(response));
                         return;
                     }
 
                     T read = converter.convert(r);
                     if (read == null) throw new NullPointerException("Convert returned null!");
-                    result.onSuccess(read);
+                    finalTarget.onSuccess(read);
                 } catch (Exception e) {
-                    result.onFailure(e);
+                    finalTarget.onFailure(e);
                 }
             }
         };
-        if (enqueue) {
-            call.enqueue(callback);
+        if (sharedCall != null) {
+            Call subscribed = sharedCall.start(call, callback, result);
+            requestScheduler.enqueue(call, callback, priority);
+            return new Pair<>(subscribed, callback);
         }
         return new Pair<>(call, callback);
     }
@@ -657,24 +781,224 @@ public class NetUtils {
     public static Call makeHeadersRequest(
             @NonNull final HttpUrl url, @NonNull final ResponseResult<Headers> result
     ) {
-        Call call = applicationClient.newCall(new Request.Builder().url(url).head().build());
         BackgroundThreadResponseResult<Headers> wrap = new BackgroundThreadResponseResult<>(result);
-        call.enqueue(new Callback() {
+        String key = getSharedCallKey("HEAD", url, null, null, null);
+        SharedCall<Headers> sharedCall;
+        synchronized (sharedCalls) {
+            //noinspection unchecked
+            SharedCall<Headers> existing = (SharedCall<Headers>) sharedCalls.get(key);
+            Call joined = existing == null ? null : existing.subscribe(null, wrap);
+            if (joined != null) return joined;
+            sharedCall = new SharedCall<>(key, null);
+            sharedCalls.put(key, sharedCall);
+        }
+        Call call =
+                applicationClient.newCall(new Request.Builder().url(url).head().tag(Priority.class, PREFETCH).build());
+        Callback callback = new Callback() {
             @Override
             public void onFailure(@NotNull Call call, @NotNull IOException e) {
-                wrap.onFailure(e);
+                sharedCall.onFailure(e);
             }
 
             @Override
             public void onResponse(@NotNull Call call, @NotNull Response response) {
                 if (!response.isSuccessful()) {
-                    wrap.onFailure(new HttpCodeException(response));
+                    sharedCall.onFailure(new HttpCodeException(response));
                 } else {
-                    wrap.onSuccess(response.headers());
+                    sharedCall.onSuccess(response.headers());
                 }
                 response.close();
             }
-        });
-        return call;
+        };
+        Call subscribed = sharedCall.start(call, callback, wrap);
+        requestScheduler.enqueue(call, callback, PREFETCH);
+        return subscribed;
+    }
+
+    /**
+     * Converters may capture per-request state (like a file to write to, or a reader's own state), so only the exact
+     * same instance (usually a constant) can share a call, unless it is a chain converter with a share token.
+     */
+    private static Object getConverterToken(@NonNull Converter<?, ?> converter) {
+        if (converter instanceof ChainConverter) {
+            String shareToken = ((ChainConverter<?, ?>) converter).getShareToken();
+            if (shareToken != null) return shareToken;
+        }
+        return converter;
+    }
+
+    /**
+     * @return a key for a request; requests with the same key and converter token can share one call and its result
+     */
+    private static String getSharedCallKey(
+            @NonNull String method,
+            @NonNull HttpUrl url,
+            @Nullable Object converterToken,
+            @Nullable CacheControl cacheControl,
+            @Nullable Headers extraHeaders
+    ) {
+        String converterName = "";
+        if (converterToken instanceof String) {
+            converterName = (String) converterToken;
+        } else if (converterToken != null) {
+            converterName = converterToken.getClass().getName();
+        }
+        return method + " " + url + " " + converterName + " " + (cacheControl == null ? "" : cacheControl) + " "
+                + (extraHeaders == null ? "" : extraHeaders);
+    }
+
+    // Requests that are currently in flight and can be joined by other requests with the same key
+    private static final Map<String, SharedCall<?>> sharedCalls = new HashMap<>();
+
+    /**
+     * A single in-flight call that any number of requests for the same thing can subscribe to; the response is only
+     * converted once, and that result is passed to all subscribers. Each subscriber gets its own call handle, and
+     * canceling that handle only cancels the actual call once every other subscriber has canceled as well.
+     * The first subscriber's timeout and progress listener are used for the actual call.
+     *
+     * @param <T> The type of the result
+     */
+    private static class SharedCall<T>
+            implements ResponseResult<T> {
+        private final String key;
+        private final Object converterToken;
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private Call call;
+        private Callback callback;
+        private boolean complete;
+
+        private SharedCall(String key, @Nullable Object converterToken) {
+            this.key = key;
+            this.converterToken = converterToken;
+        }
+
+        /**
+         * Set the actual call for this shared call, before it is enqueued.
+         *
+         * @return the handle for the subscriber that started this call
+         */
+        private synchronized Call start(Call call, Callback callback, ResponseResult<T> result) {
+            this.call = call;
+            this.callback = callback;
+            Subscriber subscriber = new Subscriber(result);
+            subscribers.add(subscriber);
+            return subscriber;
+        }
+
+        /**
+         * @return a handle for the new subscriber, or null if this call has already completed or can't be joined
+         */
+        @Nullable
+        private synchronized Call subscribe(@Nullable Object converterToken, ResponseResult<T> result) {
+            if (complete || call == null || !Objects.equals(converterToken, this.converterToken)) return null;
+            Subscriber subscriber = new Subscriber(result);
+            subscribers.add(subscriber);
+            return subscriber;
+        }
+
+        private List<Subscriber> complete() {
+            synchronized (sharedCalls) {
+                if (sharedCalls.get(key) == this) {
+                    sharedCalls.remove(key);
+                }
+            }
+            synchronized (this) {
+                complete = true;
+                return new ArrayList<>(subscribers);
+            }
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            for (Subscriber subscriber : complete()) {
+                subscriber.result.onFailure(e);
+            }
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            for (Subscriber subscriber : complete()) {
+                subscriber.result.onSuccess(result);
+            }
+        }
+
+        /**
+         * A handle on the shared call for a single subscriber.
+         */
+        private class Subscriber
+                implements Call {
+            private final ResponseResult<T> result;
+            private boolean canceled;
+
+            private Subscriber(ResponseResult<T> result) {
+                this.result = result;
+            }
+
+            @Override
+            public void cancel() {
+                boolean last;
+                synchronized (SharedCall.this) {
+                    if (canceled || complete) return;
+                    canceled = true;
+                    last = true;
+                    for (Subscriber subscriber : subscribers) {
+                        last &= subscriber.canceled;
+                    }
+                    if (!last) {
+                        // the call keeps going for the others, so this subscriber is told it was canceled right away
+                        subscribers.remove(this);
+                    }
+                }
+                if (last) {
+                    // the actual call will report the cancellation to this last subscriber
+                    call.cancel();
+                    requestScheduler.cancelQueued(call);
+                } else {
+                    BackgroundUtils.runOnBackgroundThread(() -> result.onFailure(new IOException("Canceled")));
+                }
+            }
+
+            @NotNull
+            @Override
+            public Request request() {
+                return call.request();
+            }
+
+            @NotNull
+            @Override
+            public Response execute() {
+                throw new IllegalStateException("Already Executed");
+            }
+
+            @Override
+            public void enqueue(@NotNull Callback responseCallback) {
+                throw new IllegalStateException("Already Executed");
+            }
+
+            @Override
+            public boolean isExecuted() {
+                return true;
+            }
+
+            @Override
+            public boolean isCanceled() {
+                synchronized (SharedCall.this) {
+                    return canceled;
+                }
+            }
+
+            @NotNull
+            @Override
+            public Timeout timeout() {
+                return call.timeout();
+            }
+
+            @SuppressWarnings("MethodDoesntCallSuperMethod")
+            @NotNull
+            @Override
+            public Call clone() {
+                return call.clone();
+            }
+        }
     }
 }
@@ -54,15 +54,38 @@ public class NetUtilsClasses {
             super(builder);
         }
 
-        // This adds an HTTP redirect follower to the base client
-        public OkHttpClient getHttpRedirectClient() {
-            return newBuilder().addInterceptor(new HttpEquivRefreshInterceptor()).build();
+        private OkHttpClient httpRedirectClient;
+
+        // This adds an HTTP redirect follower to the base client; it shares everything else with this client
+        public synchronized OkHttpClient getHttpRedirectClient() {
+            if (httpRedirectClient == null) {
+                httpRedirectClient = newBuilder().addInterceptor(new HttpEquivRefreshInterceptor()).build();
+            }
+            return httpRedirectClient;
         }
     }
 
     public static final CacheControl NO_CACHE = new CacheControl.Builder().noStore().build();
     public static final CacheControl ONE_DAY_CACHE = new CacheControl.Builder().maxAge(1, TimeUnit.DAYS).build();
 
+    /**
+     * Priority classes for requests, most important first. See {@link RequestScheduler}.
+     */
+    public enum Priority {
+        INTERACTIVE(16, 5), // whatever the user is currently waiting on, like the open thread
+        VISIBLE_MEDIA(8, 4), // images and thumbnails that are on screen
+        PREFETCH(4, 3), // things that will probably be needed soon, like embeds and preloaded images
+        BACKGROUND(2, 2); // things the user isn't looking at, like watched threads
+
+        public final int maxRequests;
+        public final int maxRequestsPerHost;
+
+        Priority(int maxRequests, int maxRequestsPerHost) {
+            this.maxRequests = maxRequests;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+        }
+    }
+
     /**
      * A wrapper sidestepping an OkHttp callback that only returns what we care about.
      *
@@ -74,6 +97,17 @@ public class NetUtilsClasses {
         void onSuccess(T result);
     }
 
+    /**
+     * A ResponseResult that can be told that a conditional request came back unchanged, instead of receiving
+     * the same result in onSuccess again.
+     *
+     * @param <T> The type of the result
+     */
+    public interface NotModifiedResponseResult<T>
+            extends ResponseResult<T> {
+        void onNotModified(T previous);
+    }
+
     public interface NoFailResponseResult<T>
             extends ResponseResult<T> {
         @Override
@@ -219,9 +253,29 @@ public class NetUtilsClasses {
     public static class ChainConverter<O, I>
             implements Converter<O, I> {
         private final Converter<O, I> next;
+        // Requests for the same url with the same token can share one call and its result, see withShareToken
+        @Nullable
+        private final String shareToken;
 
         public ChainConverter(Converter<O, I> finalConverter) {
-            next = finalConverter;
+            this(finalConverter, null);
+        }
+
+        private ChainConverter(Converter<O, I> next, @Nullable String shareToken) {
+            this.next = next;
+            this.shareToken = shareToken;
+        }
+
+        /**
+         * Converters are usually made per request and may hold state of their caller, so requests only share a call
+         * when they use the exact same converter. A token lets different converters share a call and its result, for
+         * converters that give the same result for the same response whenever their tokens are equal.
+         *
+         * @param shareToken the token, which has to include anything about the caller that the result depends on
+         * @return this chain, with the token
+         */
+        public ChainConverter<O, I> withShareToken(@NonNull String shareToken) {
+            return new ChainConverter<>(next, shareToken);
         }
 
         /**
@@ -232,7 +286,12 @@ public class NetUtilsClasses {
          * @return A ChainConverter that can have additional Converters chained into it
          */
         public <T> ChainConverter<O, T> chain(Converter<I, T> intermediate) {
-            return new ChainConverter<>(response -> convert(intermediate.convert(response)));
+            return new ChainConverter<>(response -> convert(intermediate.convert(response)), shareToken);
+        }
+
+        @Nullable
+        public String getShareToken() {
+            return shareToken;
         }
 
         @Override
@@ -287,6 +346,10 @@ public class NetUtilsClasses {
         public boolean isServerErrorNotFound() {
             return code == 404;
         }
+
+        public boolean isNotModified() {
+            return code == 304;
+        }
     }
 
     /**
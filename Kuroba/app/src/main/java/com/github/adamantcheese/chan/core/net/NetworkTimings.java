@@ -0,0 +1,239 @@
+package com.github.adamantcheese.chan.core.net;
+
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.Priority;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.gson;
+
+/**
+ * Records where the time goes for each call made by a client this is installed on, into a ring buffer of the most
+ * recent calls. Requests are classified by the {@link Priority} they were tagged with, if any.
+ */
+public class NetworkTimings
+        implements EventListener.Factory {
+    private static final int MAX_SAMPLES = 512;
+
+    private final Sample[] samples = new Sample[MAX_SAMPLES];
+    private int nextSample;
+    private int sampleCount;
+
+    @NotNull
+    @Override
+    public EventListener create(@NotNull Call call) {
+        return new CallTimer();
+    }
+
+    private synchronized void record(Sample sample) {
+        samples[nextSample] = sample;
+        nextSample = (nextSample + 1) % MAX_SAMPLES;
+        sampleCount = Math.min(sampleCount + 1, MAX_SAMPLES);
+    }
+
+    /**
+     * @return the recorded samples, oldest first
+     */
+    public synchronized List<Sample> getSamples() {
+        List<Sample> ret = new ArrayList<>(sampleCount);
+        int first = sampleCount < MAX_SAMPLES ? 0 : nextSample;
+        for (int i = 0; i < sampleCount; i++) {
+            ret.add(samples[(first + i) % MAX_SAMPLES]);
+        }
+        return ret;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(samples, null);
+        nextSample = 0;
+        sampleCount = 0;
+    }
+
+    /**
+     * @return the recorded samples as a JSON array
+     */
+    public String exportJson() {
+        return gson.toJson(getSamples());
+    }
+
+    /**
+     * @return p50/p95 of the time to first byte and total call time per host, for debugging
+     */
+    public String getSummary() {
+        Map<String, List<Sample>> byHost = new TreeMap<>();
+        for (Sample sample : getSamples()) {
+            List<Sample> hostSamples = byHost.get(sample.host);
+            if (hostSamples == null) {
+                hostSamples = new ArrayList<>();
+                byHost.put(sample.host, hostSamples);
+            }
+            hostSamples.add(sample);
+        }
+
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, List<Sample>> entry : byHost.entrySet()) {
+            List<Long> ttfb = new ArrayList<>();
+            List<Long> total = new ArrayList<>();
+            int cacheHits = 0;
+            for (Sample sample : entry.getValue()) {
+                if (sample.ttfbMs >= 0) ttfb.add(sample.ttfbMs);
+                total.add(sample.totalMs);
+                if (sample.cacheHit) cacheHits++;
+            }
+            summary.append(String.format(Locale.ENGLISH,
+                    "%s (%d calls, %d cached)\n  ttfb p50 %dms, p95 %dms; total p50 %dms, p95 %dms\n",
+                    entry.getKey(),
+                    entry.getValue().size(),
+                    cacheHits,
+                    percentile(ttfb, 50),
+                    percentile(ttfb, 95),
+                    percentile(total, 50),
+                    percentile(total, 95)
+            ));
+        }
+        return summary.length() == 0 ? "No requests recorded" : summary.toString().trim();
+    }
+
+    private static long percentile(List<Long> values, int percentile) {
+        if (values.isEmpty()) return -1;
+        Collections.sort(values);
+        int index = (int) Math.ceil(percentile / 100.0 * values.size()) - 1;
+        return values.get(Math.max(0, index));
+    }
+
+    /**
+     * Timings for a single call, in milliseconds. Phases that didn't happen (like DNS for a reused connection) are -1.
+     */
+    public static class Sample {
+        public String host;
+        public String requestClass;
+        public long startedAt;
+        public long dnsMs = -1;
+        public long connectMs = -1;
+        public long tlsMs = -1;
+        public long ttfbMs = -1;
+        public long totalMs;
+        public long bodyBytes;
+        public boolean cacheHit;
+        public boolean failed;
+    }
+
+    private class CallTimer
+            extends EventListener {
+        private final Sample sample = new Sample();
+        private long callStart;
+        private long dnsStart;
+        private long connectStart;
+        private long secureConnectStart;
+
+        @Override
+        public void callStart(@NotNull Call call) {
+            callStart = System.nanoTime();
+            sample.startedAt = System.currentTimeMillis();
+            sample.host = call.request().url().host();
+            Priority priority = call.request().tag(Priority.class);
+            sample.requestClass = priority == null ? "other" : priority.name().toLowerCase(Locale.ENGLISH);
+        }
+
+        @Override
+        public void dnsStart(@NotNull Call call, @NotNull String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(
+                @NotNull Call call, @NotNull String domainName, @NotNull List<InetAddress> inetAddressList
+        ) {
+            sample.dnsMs = sinceMs(dnsStart);
+        }
+
+        @Override
+        public void connectStart(
+                @NotNull Call call, @NotNull InetSocketAddress inetSocketAddress, @NotNull Proxy proxy
+        ) {
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(@NotNull Call call) {
+            secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(@NotNull Call call, @Nullable Handshake handshake) {
+            sample.tlsMs = sinceMs(secureConnectStart);
+        }
+
+        @Override
+        public void connectEnd(
+                @NotNull Call call,
+                @NotNull InetSocketAddress inetSocketAddress,
+                @NotNull Proxy proxy,
+                @Nullable Protocol protocol
+        ) {
+            sample.connectMs = sinceMs(connectStart);
+        }
+
+        @Override
+        public void responseHeadersStart(@NotNull Call call) {
+            // only the first response counts, redirects and the like come after it
+            if (sample.ttfbMs == -1) {
+                sample.ttfbMs = sinceMs(callStart);
+            }
+        }
+
+        @Override
+        public void responseBodyEnd(@NotNull Call call, long byteCount) {
+            sample.bodyBytes += byteCount;
+        }
+
+        @Override
+        public void cacheHit(@NotNull Call call, @NotNull Response response) {
+            sample.cacheHit = true;
+        }
+
+        @Override
+        public void cacheConditionalHit(@NotNull Call call, @NotNull Response cachedResponse) {
+            sample.cacheHit = true;
+        }
+
+        @Override
+        public void callEnd(@NotNull Call call) {
+            finish(false);
+        }
+
+        @Override
+        public void callFailed(@NotNull Call call, @NotNull IOException ioe) {
+            finish(true);
+        }
+
+        private void finish(boolean failed) {
+            sample.totalMs = sinceMs(callStart);
+            sample.failed = failed;
+            record(sample);
+        }
+
+        private long sinceMs(long startNanos) {
+            return (System.nanoTime() - startNanos) / 1000000L;
+        }
+    }
+}
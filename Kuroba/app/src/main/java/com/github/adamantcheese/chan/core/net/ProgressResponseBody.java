@@ -4,10 +4,14 @@ import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 
+import org.jetbrains.annotations.NotNull;
+
 import java.io.IOException;
 
 import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
 import okhttp3.MediaType;
+import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okio.Buffer;
@@ -79,4 +83,30 @@ public class ProgressResponseBody
     public interface ProgressListener {
         void onDownloadProgress(HttpUrl source, long bytesRead, long contentLength, boolean start, boolean done);
     }
+
+    /**
+     * A network interceptor that reports progress to the {@link ProgressListener} a request was tagged with, see
+     * {@link ProgressResponseBody#tag(Request.Builder, ProgressListener)}. Untagged requests are passed through.
+     */
+    public static class ProgressInterceptor
+            implements Interceptor {
+        @NotNull
+        @Override
+        public Response intercept(@NotNull Chain chain)
+                throws IOException {
+            ProgressListener progressListener = chain.request().tag(ProgressListener.class);
+            Response originalResponse = chain.proceed(chain.request());
+            if (progressListener == null || originalResponse.body() == null) return originalResponse;
+            return originalResponse.newBuilder()
+                    .body(new ProgressResponseBody(originalResponse, progressListener))
+                    .build();
+        }
+    }
+
+    /**
+     * Tag a request so that {@link ProgressInterceptor} reports its download progress to the given listener.
+     */
+    public static Request.Builder tag(Request.Builder builder, @Nullable ProgressListener progressListener) {
+        return builder.tag(ProgressListener.class, progressListener);
+    }
 }
@@ -0,0 +1,194 @@
+package com.github.adamantcheese.chan.core.net;
+
+import androidx.annotation.NonNull;
+
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.Priority;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+/**
+ * Holds calls back before they're handed to OkHttp's dispatcher, so that the thread the user is looking at doesn't
+ * have to wait behind background work. Calls are started in priority order, as long as their priority class and host
+ * are under their concurrency limits; lower priorities have lower per-host limits, so there's always room on a host
+ * for more important calls.
+ * <p>Canceling a call that is still queued here reports it as canceled to its callback once the scheduler next runs.
+ */
+public class RequestScheduler {
+    private final Map<Priority, ArrayDeque<ScheduledCall>> queued = new EnumMap<>(Priority.class);
+    private final int[] running = new int[Priority.values().length];
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+
+    public RequestScheduler() {
+        for (Priority priority : Priority.values()) {
+            queued.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Enqueue a call once its priority class and host have room for it.
+     *
+     * @param call     The call to enqueue, which must not be enqueued already
+     * @param callback The callback for the call
+     * @param priority The priority of the call
+     */
+    public void enqueue(@NonNull Call call, @NonNull Callback callback, @NonNull Priority priority) {
+        synchronized (this) {
+            queued.get(priority).add(new ScheduledCall(call, callback, priority));
+        }
+        promote();
+    }
+
+    /**
+     * If the given call is still waiting to be started, remove it and report it as canceled. This doesn't cancel the
+     * call itself.
+     */
+    public void cancelQueued(@NonNull Call call) {
+        ScheduledCall removed = null;
+        synchronized (this) {
+            for (ArrayDeque<ScheduledCall> queue : queued.values()) {
+                Iterator<ScheduledCall> iterator = queue.iterator();
+                while (iterator.hasNext()) {
+                    ScheduledCall scheduledCall = iterator.next();
+                    if (scheduledCall.call == call) {
+                        iterator.remove();
+                        removed = scheduledCall;
+                        break;
+                    }
+                }
+            }
+        }
+        if (removed != null) {
+            removed.reportCanceled();
+        }
+    }
+
+    public synchronized int getQueuedCount(@NonNull Priority priority) {
+        return queued.get(priority).size();
+    }
+
+    public synchronized int getRunningCount(@NonNull Priority priority) {
+        return running[priority.ordinal()];
+    }
+
+    /**
+     * @return a summary of the running and queued calls per priority, for debugging
+     */
+    public synchronized String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Priority priority : Priority.values()) {
+            summary.append(String.format(Locale.ENGLISH,
+                    "%s: %d running, %d queued\n",
+                    priority.name().toLowerCase(Locale.ENGLISH),
+                    running[priority.ordinal()],
+                    queued.get(priority).size()
+            ));
+        }
+        return summary.append("Busy hosts: ").append(runningPerHost.size()).toString();
+    }
+
+    private void promote() {
+        List<ScheduledCall> toStart = new ArrayList<>();
+        List<ScheduledCall> canceled = new ArrayList<>();
+        synchronized (this) {
+            // priorities are declared from most to least important
+            for (Priority priority : Priority.values()) {
+                Iterator<ScheduledCall> iterator = queued.get(priority).iterator();
+                while (iterator.hasNext()) {
+                    ScheduledCall scheduledCall = iterator.next();
+                    // canceled calls are swept out of full lanes as well, so they don't wait there for a free slot
+                    if (scheduledCall.call.isCanceled()) {
+                        iterator.remove();
+                        canceled.add(scheduledCall);
+                        continue;
+                    }
+                    if (running[priority.ordinal()] >= priority.maxRequests) continue;
+                    Integer hostCount = runningPerHost.get(scheduledCall.host);
+                    if (hostCount != null && hostCount >= priority.maxRequestsPerHost) continue;
+
+                    iterator.remove();
+                    running[priority.ordinal()]++;
+                    runningPerHost.put(scheduledCall.host, hostCount == null ? 1 : hostCount + 1);
+                    toStart.add(scheduledCall);
+                }
+            }
+        }
+
+        for (ScheduledCall scheduledCall : canceled) {
+            scheduledCall.reportCanceled();
+        }
+        for (ScheduledCall scheduledCall : toStart) {
+            scheduledCall.start();
+        }
+    }
+
+    private void finished(ScheduledCall scheduledCall) {
+        synchronized (this) {
+            running[scheduledCall.priority.ordinal()]--;
+            Integer hostCount = runningPerHost.get(scheduledCall.host);
+            if (hostCount == null || hostCount <= 1) {
+                runningPerHost.remove(scheduledCall.host);
+            } else {
+                runningPerHost.put(scheduledCall.host, hostCount - 1);
+            }
+        }
+        promote();
+    }
+
+    private class ScheduledCall
+            implements Callback {
+        private final Call call;
+        private final Callback callback;
+        private final Priority priority;
+        private final String host;
+
+        private ScheduledCall(Call call, Callback callback, Priority priority) {
+            this.call = call;
+            this.callback = callback;
+            this.priority = priority;
+            this.host = call.request().url().host();
+        }
+
+        private void start() {
+            call.enqueue(this);
+        }
+
+        private void reportCanceled() {
+            // callbacks expect to be called off the main thread, like OkHttp does
+            BackgroundUtils.runOnBackgroundThread(() -> callback.onFailure(call, new IOException("Canceled")));
+        }
+
+        @Override
+        public void onFailure(@NotNull Call call, @NotNull IOException e) {
+            try {
+                callback.onFailure(call, e);
+            } finally {
+                finished(this);
+            }
+        }
+
+        @Override
+        public void onResponse(@NotNull Call call, @NotNull Response response)
+                throws IOException {
+            try {
+                callback.onResponse(call, response);
+            } finally {
+                finished(this);
+            }
+        }
+    }
+}
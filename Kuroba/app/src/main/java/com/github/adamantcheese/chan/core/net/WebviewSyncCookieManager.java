@@ -5,21 +5,38 @@ import android.webkit.CookieManager;
 import androidx.annotation.NonNull;
 
 import com.franmontiel.persistentcookiejar.PersistentCookieJar;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.Cookie;
 import okhttp3.CookieJar;
 import okhttp3.HttpUrl;
 
+/**
+ * Webview cookies are only parsed again when the webview's cookie string for a host changes, and are then saved to the
+ * persistent cookie jar a little later, together with any other changes made in the meantime.
+ */
 public class WebviewSyncCookieManager
         implements CookieJar {
+    private static final long WRITE_DELAY_MS = 5000;
+
     private final PersistentCookieJar actualCookieJar;
     private final CookieManager webviewCookieManager;
 
+    // host -> the last webview cookies seen for that host
+    private final Map<String, WebviewCookies> webviewCookieIndex = new HashMap<>();
+    // url -> webview cookies that still need to be written to the actual cookie jar
+    private final Map<HttpUrl, List<Cookie>> pendingWrites = new HashMap<>();
+    private boolean writeScheduled;
+
     public WebviewSyncCookieManager(@NonNull PersistentCookieJar actualCookieJar) {
         this.actualCookieJar = actualCookieJar;
         this.webviewCookieManager = CookieManager.getInstance();
@@ -44,26 +61,14 @@ public class WebviewSyncCookieManager
     @NonNull
     @Override
     public List<Cookie> loadForRequest(@NonNull HttpUrl url) {
-        String urlString = url.toString();
-        String cookiesString = webviewCookieManager.getCookie(urlString);
-
         // Set to keep track of cookies; these are filtered on name alone
         Set<CustomHashCookie> toReturn = new HashSet<>();
         for (Cookie existing : actualCookieJar.loadForRequest(url)) {
             toReturn.add(new CustomHashCookie(existing));
         }
 
-        if (cookiesString != null) {
-            //We can split on the ';' char as the cookie manager only returns cookies
-            //that match the url and haven't expired, so the cookie attributes aren't included
-            String[] cookieHeaders = cookiesString.split(";");
-
-            for (String header : cookieHeaders) {
-                Cookie parsed = Cookie.parse(url, header.trim());
-                if (parsed != null) {
-                    toReturn.add(new CustomHashCookie(parsed));
-                }
-            }
+        for (Cookie webviewCookie : getWebviewCookies(url)) {
+            toReturn.add(new CustomHashCookie(webviewCookie));
         }
 
         List<Cookie> ret = new ArrayList<>();
@@ -71,16 +76,93 @@ public class WebviewSyncCookieManager
             ret.add(c.cookie);
         }
 
-        actualCookieJar.saveFromResponse(url, ret);
-
         return ret;
     }
 
+    /**
+     * @return the webview's cookies for the given url, only parsed if they changed since the last request to its host
+     */
+    private List<Cookie> getWebviewCookies(@NonNull HttpUrl url) {
+        String cookiesString = webviewCookieManager.getCookie(url.toString());
+        if (cookiesString == null) return Collections.emptyList();
+
+        synchronized (webviewCookieIndex) {
+            WebviewCookies indexed = webviewCookieIndex.get(url.host());
+            if (indexed != null && indexed.cookiesString.equals(cookiesString)) return indexed.cookies;
+        }
+
+        //We can split on the ';' char as the cookie manager only returns cookies
+        //that match the url and haven't expired, so the cookie attributes aren't included
+        List<Cookie> parsedCookies = new ArrayList<>();
+        for (String header : cookiesString.split(";")) {
+            Cookie parsed = Cookie.parse(url, header.trim());
+            if (parsed != null) {
+                parsedCookies.add(parsed);
+            }
+        }
+
+        synchronized (webviewCookieIndex) {
+            webviewCookieIndex.put(url.host(), new WebviewCookies(cookiesString, parsedCookies));
+        }
+        scheduleWrite(url, parsedCookies);
+        return parsedCookies;
+    }
+
+    private void scheduleWrite(HttpUrl url, List<Cookie> cookies) {
+        synchronized (pendingWrites) {
+            pendingWrites.put(url, cookies);
+            if (writeScheduled) return;
+            writeScheduled = true;
+        }
+        BackgroundUtils.backgroundScheduledService.schedule(this::writePending, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void writePending() {
+        Map<HttpUrl, List<Cookie>> toWrite;
+        synchronized (pendingWrites) {
+            toWrite = new HashMap<>(pendingWrites);
+            pendingWrites.clear();
+            writeScheduled = false;
+        }
+        for (Map.Entry<HttpUrl, List<Cookie>> write : toWrite.entrySet()) {
+            // okhttp cookies overrule webview cookies, so those aren't overwritten
+            Set<CustomHashCookie> existing = new HashSet<>();
+            for (Cookie cookie : actualCookieJar.loadForRequest(write.getKey())) {
+                existing.add(new CustomHashCookie(cookie));
+            }
+            List<Cookie> toSave = new ArrayList<>();
+            for (Cookie cookie : write.getValue()) {
+                if (!existing.contains(new CustomHashCookie(cookie))) {
+                    toSave.add(cookie);
+                }
+            }
+            if (!toSave.isEmpty()) {
+                actualCookieJar.saveFromResponse(write.getKey(), toSave);
+            }
+        }
+    }
+
     public void clear() {
+        synchronized (pendingWrites) {
+            pendingWrites.clear();
+        }
+        synchronized (webviewCookieIndex) {
+            webviewCookieIndex.clear();
+        }
         webviewCookieManager.removeAllCookie();
         actualCookieJar.clear();
     }
 
+    private static class WebviewCookies {
+        private final String cookiesString;
+        private final List<Cookie> cookies;
+
+        private WebviewCookies(String cookiesString, List<Cookie> cookies) {
+            this.cookiesString = cookiesString;
+            this.cookies = Collections.unmodifiableList(cookies);
+        }
+    }
+
     private static class CustomHashCookie {
         public Cookie cookie;
 
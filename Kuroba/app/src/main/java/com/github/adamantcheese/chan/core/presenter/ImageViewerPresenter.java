@@ -368,7 +368,8 @@ public class ImageViewerPresenter
                         }
                     },
                     null,
-                    NetUtilsClasses.ONE_DAY_CACHE
+                    NetUtilsClasses.ONE_DAY_CACHE,
+                    NetUtilsClasses.Priority.PREFETCH
             );
 
             if (preloadDownload[0] != null) {
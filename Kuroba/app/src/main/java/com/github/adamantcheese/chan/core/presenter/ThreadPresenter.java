@@ -132,7 +132,7 @@ import static com.github.adamantcheese.chan.utils.AndroidUtils.shareLink;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.sp;
 
 public class ThreadPresenter
-        implements NetUtilsClasses.ResponseResult<ChanThread>, PostAdapter.PostAdapterCallback,
+        implements NetUtilsClasses.NotModifiedResponseResult<ChanThread>, PostAdapter.PostAdapterCallback,
                    PostCellInterface.PostCellCallback, ThreadStatusCell.Callback,
                    ThreadListLayout.ThreadListLayoutPresenterCallback, ArchivesLayout.Callback, ProgressResponseBody.ProgressListener {
     //region Private Variables
@@ -232,6 +232,22 @@ public class ThreadPresenter
         chanLoader.requestAdditionalData();
     }
 
+    /**
+     * Apply the changed filters to the posts that are already loaded. Debug filters mark their matches while the posts
+     * are parsed, so with those on, the posts are loaded again instead.
+     */
+    public void onFiltersChanged() {
+        BackgroundUtils.ensureMainThread();
+
+        if (isBound()) {
+            if (ChanSettings.debugFilters.get()) {
+                requestData();
+            } else {
+                chanLoader.reapplyFilters();
+            }
+        }
+    }
+
     public void onForegroundChanged(boolean foreground) {
         if (isBound()) {
             if (foreground && isWatching()) {
@@ -383,6 +399,23 @@ public class ThreadPresenter
         updateDatabaseLoadable();
     }
 
+    @Override
+    public void onNotModified(ChanThread previous) {
+        BackgroundUtils.ensureMainThread();
+
+        if (!isBound()) {
+            Logger.e(this, "onNotModified when not bound!");
+            return;
+        }
+
+        // nothing changed, so the displayed posts are still current; only the refresh timer needs to be kept going
+        if (isWatching()) {
+            chanLoader.setTimer();
+        } else {
+            chanLoader.clearTimer();
+        }
+    }
+
     @Override
     public void onFailure(Exception error) {
         Logger.d(this, "onChanLoaderError()");
@@ -974,6 +1007,11 @@ public class ThreadPresenter
         return isBound() ? chanLoader.getTimeUntilLoadMore() : 0L;
     }
 
+    @Override
+    public long getCachedCopyAge() {
+        return isBound() ? chanLoader.getCachedCopyAge() : -1L;
+    }
+
     @Override
     public boolean isWatching() {
         //@formatter:off
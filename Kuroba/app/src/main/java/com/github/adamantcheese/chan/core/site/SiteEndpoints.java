@@ -16,6 +16,7 @@
  */
 package com.github.adamantcheese.chan.core.site;
 
+import androidx.annotation.Nullable;
 import androidx.collection.ArrayMap;
 import androidx.core.util.Pair;
 
@@ -24,6 +25,8 @@ import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.PassthroughBitmapResult;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import okhttp3.HttpUrl;
@@ -37,6 +40,25 @@ public interface SiteEndpoints {
 
     HttpUrl thread(Loadable loadable);
 
+    /**
+     * An optional endpoint for a thread that only contains the OP and the last few posts of the thread, for refreshing
+     * large threads without downloading the whole thread again.
+     *
+     * @return the url for the thread's tail, or null if this site doesn't support it
+     */
+    default HttpUrl threadTail(Loadable loadable) {
+        return null;
+    }
+
+    /**
+     * @return the hosts this site's content is usually loaded from (API, images, thumbnails), to be resolved ahead of
+     * time; by default only the host of the boards endpoint, so sites without one should override this
+     */
+    default List<String> hosts() {
+        HttpUrl boards = boards();
+        return boards == null ? Collections.emptyList() : Collections.singletonList(boards.host());
+    }
+
     HttpUrl imageUrl(Post.Builder post, Map<String, String> arg);
 
     HttpUrl thumbnailUrl(Post.Builder post, boolean spoiler, Map<String, String> arg);
@@ -64,6 +86,12 @@ public interface SiteEndpoints {
 
     HttpUrl login();
 
+    static void addHost(List<String> hosts, @Nullable HttpUrl url) {
+        if (url != null && !hosts.contains(url.host())) {
+            hosts.add(url.host());
+        }
+    }
+
     static Map<String, String> makeArgument(String key, String value) {
         Map<String, String> map = new ArrayMap<>(1);
         map.put(key, value);
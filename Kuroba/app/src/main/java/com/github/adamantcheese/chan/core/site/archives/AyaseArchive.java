@@ -12,6 +12,7 @@ import com.github.adamantcheese.chan.ui.theme.Theme;
 
 import org.jsoup.nodes.Element;
 
+import java.util.Collections;
 import java.util.List;
 
 import kotlin.NotImplementedError;
@@ -293,6 +294,11 @@ public class AyaseArchive
     @Override
     public ArchiveEndpoints endpoints() {
         return new ArchiveEndpoints() {
+            @Override
+            public List<String> hosts() {
+                return Collections.singletonList(domain);
+            }
+
             @Override
             public HttpUrl thread(Loadable loadable) {
                 throw new NotImplementedError();
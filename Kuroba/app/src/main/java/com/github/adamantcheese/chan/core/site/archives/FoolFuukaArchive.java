@@ -258,6 +258,12 @@ public class FoolFuukaArchive
             setFullQuotePattern(compiledPattern);
         }
 
+        @Override
+        public boolean handlesDetachedElements() {
+            // greentext spans are checked for nested elements below
+            return false;
+        }
+
         @Override
         public CharSequence handleTag(
                 PostParser.Callback callback,
@@ -360,6 +366,11 @@ public class FoolFuukaArchive
     @Override
     public ArchiveEndpoints endpoints() {
         return new ArchiveEndpoints() {
+            @Override
+            public List<String> hosts() {
+                return Collections.singletonList(domain);
+            }
+
             @Override
             public HttpUrl thread(Loadable loadable) {
                 return HttpUrl.get("https://" + domain + "/_/api/chan/thread/?board=" + loadable.boardCode + "&num="
@@ -49,7 +49,9 @@ import com.github.adamantcheese.chan.core.site.parser.CommentParser;
 import com.github.adamantcheese.chan.core.site.parser.PostParser;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -321,6 +323,16 @@ public abstract class CommonSite
             this.site = site;
         }
 
+        @Override
+        public List<String> hosts() {
+            List<String> hosts = new ArrayList<>();
+            SiteEndpoints.addHost(hosts, boards());
+            if (site.resolvable() instanceof CommonSiteUrlHandler) {
+                SiteEndpoints.addHost(hosts, ((CommonSiteUrlHandler) site.resolvable()).getUrl());
+            }
+            return hosts;
+        }
+
         @Override
         public HttpUrl catalog(Board board) {
             return null;
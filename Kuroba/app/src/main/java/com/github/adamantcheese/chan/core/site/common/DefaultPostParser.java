@@ -27,23 +27,24 @@ import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 
 import com.github.adamantcheese.chan.R;
-import com.github.adamantcheese.chan.core.manager.FilterEngine;
+import com.github.adamantcheese.chan.core.manager.FilterMatcher;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostLinkable;
 import com.github.adamantcheese.chan.core.model.PostLinkable.Type;
-import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.settings.PersistableChanState;
 import com.github.adamantcheese.chan.core.site.parser.CommentParser;
+import com.github.adamantcheese.chan.core.site.parser.CommentTokenizer;
+import com.github.adamantcheese.chan.core.site.parser.CommentTokenizer.UnsupportedMarkupException;
 import com.github.adamantcheese.chan.core.site.parser.PostParser;
 import com.github.adamantcheese.chan.ui.text.AbsoluteSizeSpanHashed;
 import com.github.adamantcheese.chan.ui.text.BackgroundColorSpanHashed;
 import com.github.adamantcheese.chan.ui.text.ForegroundColorSpanHashed;
 import com.github.adamantcheese.chan.ui.text.RoundedBackgroundSpan;
+import com.github.adamantcheese.chan.ui.text.ThemeColorSpan;
 import com.github.adamantcheese.chan.ui.theme.Theme;
 import com.github.adamantcheese.chan.utils.Logger;
 import com.github.adamantcheese.chan.utils.StringUtils;
-import com.vdurmont.emoji.EmojiParser;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Element;
@@ -52,24 +53,22 @@ import org.jsoup.nodes.TextNode;
 import org.jsoup.parser.Parser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.inject.Inject;
-
-import static com.github.adamantcheese.chan.Chan.inject;
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
-import static com.github.adamantcheese.chan.utils.AndroidUtils.getAttrColor;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getContrastColor;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.sp;
+import static com.github.adamantcheese.chan.utils.StringUtils.parseEmojiToUnicode;
 
 @AnyThread
 public class DefaultPostParser
         implements PostParser {
     private final CommentParser commentParser;
-    @Inject
-    private FilterEngine filterEngine;
 
     // All of these have one matching group associated with the text they need to work
     // This negative lookbehind and negative lookahead are just so it doesn't match too much stuff, experimentally determined
@@ -82,13 +81,29 @@ public class DefaultPostParser
     private final Pattern codePattern = Pattern.compile("`(.+)`");
     private final Pattern strikePattern = Pattern.compile("~~(.+)~~");
 
+    // tags that the streaming parser handles by itself, anything else sends the comment to Jsoup
+    private static final Set<String> STREAMED_TAGS = new HashSet<>(Arrays.asList("a",
+            "span",
+            "s",
+            "b",
+            "strong",
+            "i",
+            "em",
+            "u",
+            "strike",
+            "font",
+            "pre",
+            "code",
+            "iframe"
+    ));
+    private static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList("br", "wbr", "img"));
+
     public DefaultPostParser(CommentParser commentParser) {
         this.commentParser = commentParser;
-        inject(this);
     }
 
     @Override
-    public Post parse(@NonNull Theme theme, Post.Builder builder, List<Filter> filters, Callback callback) {
+    public Post parse(@NonNull Theme theme, Post.Builder builder, FilterMatcher filters, Callback callback) {
         if (!TextUtils.isEmpty(builder.name)) {
             builder.name = Parser.unescapeEntities(builder.name, false);
         }
@@ -97,15 +112,17 @@ public class DefaultPostParser
             builder.subject = Parser.unescapeEntities(builder.subject, false);
         }
 
-        parseInfoSpans(theme, builder);
-        builder.comment = parseComment(theme, builder, callback);
+        parseInfoSpans(builder);
+        if (!builder.commentParsed) {
+            builder.comment = parseComment(theme, builder, callback);
+        }
 
         // process any removed posts, and remove any linkables/spans attached
         for (PostLinkable l : builder.getLinkables()) {
             if (l.type == Type.QUOTE) {
                 if (callback.isRemoved((int) l.value)) {
                     builder.repliesToNos.remove((int) l.value);
-                    builder.comment.setSpan(new PostLinkable(theme, new Object(), Type.OTHER) {
+                    builder.comment.setSpan(new PostLinkable(new Object(), Type.OTHER) {
                         @Override
                         public void onClick(@NonNull View widget) {
                             showToast(widget.getContext(), "This post has been removed.");
@@ -122,7 +139,7 @@ public class DefaultPostParser
             }
         }
 
-        processPostFilter(filters, builder);
+        filters.apply(builder, false);
 
         return builder.build();
     }
@@ -132,10 +149,9 @@ public class DefaultPostParser
      * This is done on a background thread for performance, even when it is UI code.<br>
      * The results will be placed on the Post.*Span members.
      *
-     * @param theme   Theme to use for parsing
      * @param builder Post builder to get data from
      */
-    private void parseInfoSpans(Theme theme, Post.Builder builder) {
+    private void parseInfoSpans(Post.Builder builder) {
         float detailsSizePx = sp(ChanSettings.fontSize.get() - 4);
         SpannableStringBuilder nameTripcodeIdCapcodeSpan = new SpannableStringBuilder();
 
@@ -148,13 +164,13 @@ public class DefaultPostParser
         if (!TextUtils.isEmpty(builder.name) && (!builder.name.equals(defaultName)
                 || ChanSettings.showAnonymousName.get())) {
             SpannableString nameSpan = new SpannableString(builder.name);
-            nameSpan.setSpan(new ForegroundColorSpanHashed(theme.nameColor), 0, nameSpan.length(), 0);
+            nameSpan.setSpan(new ThemeColorSpan(R.attr.post_name_color), 0, nameSpan.length(), 0);
             nameTripcodeIdCapcodeSpan.append(nameSpan).append("  ");
         }
 
         if (!TextUtils.isEmpty(builder.tripcode)) {
             SpannableString tripcodeSpan = new SpannableString(builder.tripcode);
-            tripcodeSpan.setSpan(new ForegroundColorSpanHashed(theme.nameColor), 0, tripcodeSpan.length(), 0);
+            tripcodeSpan.setSpan(new ThemeColorSpan(R.attr.post_name_color), 0, tripcodeSpan.length(), 0);
             tripcodeSpan.setSpan(new AbsoluteSizeSpanHashed((int) detailsSizePx), 0, tripcodeSpan.length(), 0);
             nameTripcodeIdCapcodeSpan.append(tripcodeSpan).append("  ");
         }
@@ -178,8 +194,7 @@ public class DefaultPostParser
 
         if (!TextUtils.isEmpty(builder.moderatorCapcode)) {
             SpannableString capcodeSpan = new SpannableString(StringUtils.caseAndSpace(builder.moderatorCapcode, null));
-            int accentColor = getAttrColor(theme.accentColor.accentStyleId, R.attr.colorAccent);
-            capcodeSpan.setSpan(new ForegroundColorSpanHashed(accentColor), 0, capcodeSpan.length(), 0);
+            capcodeSpan.setSpan(new ThemeColorSpan(R.attr.colorAccent), 0, capcodeSpan.length(), 0);
             capcodeSpan.setSpan(new AbsoluteSizeSpanHashed((int) detailsSizePx), 0, capcodeSpan.length(), 0);
             nameTripcodeIdCapcodeSpan.append(capcodeSpan).append("  ");
         }
@@ -188,7 +203,7 @@ public class DefaultPostParser
             SpannableString subjectSpan = new SpannableString(builder.subject);
             // Do not set another color when the post is in stub mode, it sets text_color_secondary
             if (!builder.filterStub) {
-                subjectSpan.setSpan(new ForegroundColorSpanHashed(theme.subjectColor), 0, subjectSpan.length(), 0);
+                subjectSpan.setSpan(new ThemeColorSpan(R.attr.post_subject_color), 0, subjectSpan.length(), 0);
             }
             builder.spans(subjectSpan, nameTripcodeIdCapcodeSpan);
         } else {
@@ -205,14 +220,28 @@ public class DefaultPostParser
             if (ChanSettings.parseExtraQuotes.get()) {
                 comment = extraQuotePattern.matcher(comment).replaceAll(commentParser.createQuoteElementString(post));
             }
-            if (ChanSettings.parseExtraSpoilers.get()) {
+            if (ChanSettings.parseExtraSpoilers.get() && comment.contains("[spoiler]")) {
                 comment = extraSpoilerPattern.matcher(comment).replaceAll("<s>$1</s>");
             }
             if (ChanSettings.mildMarkdown.get()) {
-                comment = boldPattern.matcher(comment).replaceAll("<b>$1</b>");
-                comment = italicPattern.matcher(comment).replaceAll("<i>$1</i>");
-                comment = codePattern.matcher(comment).replaceAll("<pre class=\"prettyprint\">$1</pre>");
-                comment = strikePattern.matcher(comment).replaceAll("<strike>$1</strike>");
+                if (comment.indexOf('*') != -1) {
+                    comment = boldPattern.matcher(comment).replaceAll("<b>$1</b>");
+                    comment = italicPattern.matcher(comment).replaceAll("<i>$1</i>");
+                }
+                if (comment.indexOf('`') != -1) {
+                    comment = codePattern.matcher(comment).replaceAll("<pre class=\"prettyprint\">$1</pre>");
+                }
+                if (comment.contains("~~")) {
+                    comment = strikePattern.matcher(comment).replaceAll("<strike>$1</strike>");
+                }
+            }
+
+            if (commentParser.handlesDetachedElements()) {
+                try {
+                    return parseStreaming(theme, post, callback, comment);
+                } catch (UnsupportedMarkupException ignored) {
+                    // markup that isn't worth handling here, let Jsoup make sense of it instead
+                }
             }
 
             for (Node node : Jsoup.parseBodyFragment(comment).body().childNodes()) {
@@ -225,15 +254,105 @@ public class DefaultPostParser
         return total;
     }
 
+    /**
+     * Parses a comment in a single pass, appending text straight into one builder. Elements are styled when they
+     * close, with the rules from the comment parser applied over the range their contents ended up in. Tables are
+     * the exception, as they need their whole structure; those get parsed into a DOM by themselves.
+     *
+     * @throws UnsupportedMarkupException if the comment has markup that this doesn't handle the same way Jsoup does
+     */
+    private SpannableStringBuilder parseStreaming(
+            @NonNull Theme theme, Post.Builder post, Callback callback, String comment
+    )
+            throws UnsupportedMarkupException {
+        SpannableStringBuilder total = new SpannableStringBuilder();
+        List<Element> openElements = new ArrayList<>();
+        List<Integer> openStarts = new ArrayList<>();
+        CommentTokenizer tokenizer = new CommentTokenizer(comment);
+        boolean afterPreStart = false;
+
+        while (tokenizer.next()) {
+            String tag = tokenizer.getTagName();
+            switch (tokenizer.getToken()) {
+                case TEXT:
+                    Element parent = openElements.isEmpty() ? null : openElements.get(openElements.size() - 1);
+                    String text = tokenizer.getText();
+                    // a newline right after a pre start tag is dropped, like an HTML parser does
+                    if (afterPreStart && text.startsWith("\n")) {
+                        text = text.substring(1);
+                    }
+                    total.append(processText(text, parent));
+                    break;
+                case START_TAG:
+                    if ("table".equals(tag)) {
+                        Element table = Jsoup.parseBodyFragment(tokenizer.readRawElement()).body().child(0);
+                        total.append(parseNode(theme, post, callback, table));
+                    } else if (VOID_TAGS.contains(tag)) {
+                        applyTag(theme, post, callback, total, total.length(), tokenizer.createElement());
+                    } else if (STREAMED_TAGS.contains(tag) && !tokenizer.isSelfClosing()) {
+                        openElements.add(tokenizer.createElement());
+                        openStarts.add(total.length());
+                    } else {
+                        throw new UnsupportedMarkupException("Unsupported tag " + tag);
+                    }
+                    break;
+                case END_TAG:
+                    int last = openElements.size() - 1;
+                    if (last < 0 || !openElements.get(last).nodeName().equals(tag)) {
+                        throw new UnsupportedMarkupException("Mismatched end tag " + tag);
+                    }
+                    applyTag(theme, post, callback, total, openStarts.remove(last), openElements.remove(last));
+                    break;
+            }
+            afterPreStart = tokenizer.getToken() == CommentTokenizer.Token.START_TAG && "pre".equals(tag);
+        }
+
+        if (!openElements.isEmpty()) {
+            throw new UnsupportedMarkupException("Unclosed " + openElements.get(openElements.size() - 1).nodeName());
+        }
+        return total;
+    }
+
+    /**
+     * Styles everything in total from start onwards for the given element; in place if the element only adds spans,
+     * otherwise it is replaced with the styled result.
+     */
+    private void applyTag(
+            @NonNull Theme theme,
+            Post.Builder post,
+            Callback callback,
+            SpannableStringBuilder total,
+            int start,
+            Element element
+    ) {
+        if (commentParser.applyTagInPlace(element.nodeName(), total, start, element)) return;
+
+        int end = total.length();
+        CharSequence inner = total.subSequence(start, end);
+        CharSequence result = commentParser.handleTag(callback, theme, post, element.nodeName(), inner, element);
+        if (result == inner) return;
+
+        // the result carries its own copies of the inner spans
+        for (Object span : total.getSpans(start, end, Object.class)) {
+            if (total.getSpanStart(span) >= start && total.getSpanEnd(span) <= end) {
+                total.removeSpan(span);
+            }
+        }
+        total.replace(start, end, result != null ? result : "");
+    }
+
+    private String processText(String text, Element parent) {
+        if (ChanSettings.enableEmoji.get() && !( //emoji parse disable for [code] and [eqn]
+                (parent != null && parent.hasClass("prettyprint")) || text.startsWith("[eqn]"))) {
+            return processEmojiMath(text);
+        }
+        return text;
+    }
+
     private SpannableStringBuilder parseNode(@NonNull Theme theme, Post.Builder post, Callback callback, Node node) {
         if (node instanceof TextNode) {
-            String text = ((TextNode) node).getWholeText();
-            if (ChanSettings.enableEmoji.get() && !( //emoji parse disable for [code] and [eqn]
-                    (node.parent() instanceof Element && (((Element) node.parent()).hasClass("prettyprint")))
-                            || text.startsWith("[eqn]"))) {
-                text = processEmojiMath(text);
-            }
-            return new SpannableStringBuilder(text);
+            Element parent = node.parent() instanceof Element ? (Element) node.parent() : null;
+            return new SpannableStringBuilder(processText(((TextNode) node).getWholeText(), parent));
         } else if (node instanceof Element) {
             // Recursively call parseNode with the nodes of the paragraph.
             List<Node> innerNodes = node.childNodes();
@@ -259,37 +378,18 @@ public class DefaultPostParser
     private final Pattern MATH_PATTERN = Pattern.compile("\\[(math|eqn)].*?\\[/\\1]");
 
     private String processEmojiMath(String text) {
+        // nearly all text has no shortcodes in it
+        if (text.indexOf(':') == -1 && !text.contains("&#")) return text;
+
         StringBuilder rebuilder = new StringBuilder();
         Matcher regexMatcher = MATH_PATTERN.matcher(text);
         int lastIndex = 0;
         while (regexMatcher.find()) {
-            rebuilder.append(EmojiParser.parseToUnicode(text.substring(lastIndex, regexMatcher.start())));
+            rebuilder.append(parseEmojiToUnicode(text.substring(lastIndex, regexMatcher.start())));
             rebuilder.append(regexMatcher.group());
             lastIndex = regexMatcher.end();
         }
-        rebuilder.append(EmojiParser.parseToUnicode(text.substring(lastIndex)));
+        rebuilder.append(parseEmojiToUnicode(text.substring(lastIndex)));
         return rebuilder.toString();
     }
-
-    private void processPostFilter(List<Filter> filters, Post.Builder post) {
-        for (Filter f : filters) {
-            FilterEngine.FilterAction action = FilterEngine.FilterAction.forId(f.action);
-            if (filterEngine.matches(f, post)) {
-                switch (action) {
-                    case COLOR:
-                        post.filter(f.color, false, false, false, f.applyToReplies, f.onlyOnOP, f.applyToSaved);
-                        break;
-                    case HIDE:
-                        post.filter(0, true, false, false, f.applyToReplies, f.onlyOnOP, false);
-                        break;
-                    case REMOVE:
-                        post.filter(0, false, true, false, f.applyToReplies, f.onlyOnOP, false);
-                        break;
-                    case WATCH:
-                        post.filter(0, false, false, true, false, true, false);
-                        break;
-                }
-            }
-        }
-    }
 }
@@ -210,6 +210,9 @@ public class FutabaChanReader
                 case "last_modified":
                     builder.lastModified(reader.nextLong());
                     break;
+                case "tail_size":
+                    builder.tailSize(reader.nextInt());
+                    break;
                 case "id":
                     builder.posterId(reader.nextString());
                     break;
@@ -23,8 +23,10 @@ import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.PassthroughBitmapResult;
+import com.github.adamantcheese.chan.core.site.SiteEndpoints;
 import com.github.adamantcheese.chan.core.site.common.CommonSite;
 
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -42,6 +44,14 @@ public class TaimabaEndpoints
         sys = new CommonSite.SimpleHttpUrl(sysUrl);
     }
 
+    @Override
+    public List<String> hosts() {
+        List<String> hosts = super.hosts();
+        SiteEndpoints.addHost(hosts, root.url());
+        SiteEndpoints.addHost(hosts, sys.url());
+        return hosts;
+    }
+
     @Override
     public HttpUrl catalog(Board board) {
         return root.builder().s(board.code).s("catalog.json").url();
@@ -16,7 +16,10 @@
  */
 package com.github.adamantcheese.chan.core.site.loader;
 
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.ReplyGraph;
 import com.github.adamantcheese.chan.utils.JavaUtils.NoDeleteArrayList;
 
 public class ChanLoaderResponse {
@@ -25,6 +28,23 @@ public class ChanLoaderResponse {
     public final Post.Builder op;
     public final NoDeleteArrayList<Post> posts = new NoDeleteArrayList<>();
 
+    // Validators from the response this was parsed from, sent back on the next refresh as a conditional request.
+    @Nullable
+    public String etag;
+    @Nullable
+    public String lastModified;
+    // If this was parsed from the thread's tail, which has validators of its own
+    public boolean fromTail;
+    // When the response this was parsed from was received; older than the request itself for cached responses
+    public long receivedAt;
+
+    // The replies between the posts, for the next refresh to append to; null if it couldn't be made
+    @Nullable
+    public ReplyGraph replyGraph;
+
+    // The version of the filters the posts were filtered with, or -1 if they weren't all filtered with the same one
+    public int filterVersion = -1;
+
     public ChanLoaderResponse(Post.Builder op) {
         this.op = op;
     }
@@ -22,13 +22,23 @@ import androidx.annotation.Nullable;
 import com.github.adamantcheese.chan.core.database.DatabaseLoadableManager;
 import com.github.adamantcheese.chan.core.database.DatabaseUtils;
 import com.github.adamantcheese.chan.core.manager.ChanLoaderManager;
+import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.ReplyGraph;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ChainConverter;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.HttpCodeException;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.NotModifiedResponseResult;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.Priority;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
 import com.github.adamantcheese.chan.core.net.ProgressResponseBody.ProgressListener;
+import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.parser.ChanReaderParser;
+import com.github.adamantcheese.chan.core.site.parser.ChanReaderParser.TailNotContiguousException;
+import com.github.adamantcheese.chan.core.site.parser.ParsedPostCache;
+import com.github.adamantcheese.chan.core.site.parser.PostParser;
 import com.github.adamantcheese.chan.ui.helper.PostHelper;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
@@ -38,10 +48,15 @@ import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledFuture;
 
+import okhttp3.CacheControl;
 import okhttp3.Call;
+import okhttp3.Headers;
 import okhttp3.HttpUrl;
+import okhttp3.Response;
 
 import static com.github.adamantcheese.chan.Chan.instance;
+import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.JSON_CONVERTER;
+import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.Priority.INTERACTIVE;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
@@ -49,6 +64,10 @@ import static java.util.concurrent.TimeUnit.SECONDS;
  * <p>Obtain ChanLoaders with {@link ChanLoaderManager} for either board catalogs or threads.
  * <p>ChanLoaders return {@link ChanThread} objects on success, through {@link ResponseResult<ChanThread>}.
  * <p>For threads, timers can be started with {@link #setTimer()} to do a request later.
+ * <p>Once a thread has been loaded, refreshes are made as conditional requests; if the server says nothing changed,
+ * listeners implementing {@link NotModifiedResponseResult} are notified through that instead of a full update.
+ * <p>Fresh thread loads first show the copy in the HTTP cache, if there is one, and then revalidate it over the network.
+ * <p>When the filters change, {@link #reapplyFilters()} applies them to the loaded posts without loading anything.
  */
 public class ChanThreadLoader {
     private static final int[] WATCH_TIMEOUTS = {10, 15, 20, 30, 60, 90, 120, 180, 240, 300, 600, 1800, 3600};
@@ -60,8 +79,11 @@ public class ChanThreadLoader {
     private final Loadable loadable;
     @Nullable
     private ChanThread thread;
+    // The current request and its generation; the generation changes whenever a request is canceled, so that the
+    // callbacks of canceled requests can tell they're no longer current. Both are guarded by this.
     @Nullable
     private Call call;
+    private int requestGeneration;
     @Nullable
     private ScheduledFuture<?> pendingFuture;
 
@@ -69,6 +91,29 @@ public class ChanThreadLoader {
     private int lastPostCount;
     private long lastLoadTime;
 
+    // Validators for the currently loaded thread, only valid as long as thread is not null; the full thread and its
+    // tail are different resources, each with their own validators
+    @Nullable
+    private String etag;
+    @Nullable
+    private String lastModified;
+    @Nullable
+    private String tailEtag;
+    @Nullable
+    private String tailLastModified;
+    // The amount of posts the site's thread tail endpoint returns for this thread, if any
+    private int tailSize = -1;
+    // When the currently shown thread was received, if it came from the HTTP cache and hasn't been revalidated yet
+    private long cachedCopyTime = -1L;
+    // The priority of the current request, and any follow-up requests it makes
+    private Priority priority = INTERACTIVE;
+    // The version of the filters the posts of the thread were filtered with, or -1 if they weren't all filtered with
+    // the same one
+    private int filterVersion = -1;
+    // The parsed comment cache of the loadable, kept open so it is read from disk only once
+    @Nullable
+    private ParsedPostCache.ThreadCache threadCache;
+
     /**
      * <b>Do not call this constructor yourself, obtain ChanLoaders through {@link ChanLoaderManager}</b>
      */
@@ -104,10 +149,7 @@ public class ChanThreadLoader {
 
         if (listeners.isEmpty()) {
             clearTimer();
-            if (call != null) {
-                call.cancel();
-                call = null;
-            }
+            cancelCall();
             return true;
         } else {
             return false;
@@ -123,13 +165,16 @@ public class ChanThreadLoader {
      * Request data for the first time.
      */
     public void requestFreshData() {
+        requestFreshData(INTERACTIVE);
+    }
+
+    /**
+     * Request data for the first time, at the given priority.
+     */
+    public void requestFreshData(@NonNull Priority priority) {
         BackgroundUtils.ensureMainThread();
         clearTimer();
-
-        if (call != null) {
-            call.cancel();
-            call = null;
-        }
+        cancelCall();
 
         if (loadable.isCatalogMode()) {
             loadable.no = 0;
@@ -141,22 +186,43 @@ public class ChanThreadLoader {
 
         synchronized (this) {
             thread = null;
+            etag = null;
+            lastModified = null;
+            tailEtag = null;
+            tailLastModified = null;
+            tailSize = -1;
+            cachedCopyTime = -1L;
+            filterVersion = -1;
         }
 
-        call = getData();
+        this.priority = priority;
+        synchronized (this) {
+            call = loadable.isThreadMode() ? getCachedData(requestGeneration) : getData(true, requestGeneration);
+        }
     }
 
     /**
      * Request more data. This only works for thread loaders.<br>
      * This clears any pending pending timers, created with {@link #setTimer()}.
      */
-
     public void requestAdditionalData() {
+        requestAdditionalData(INTERACTIVE);
+    }
+
+    /**
+     * Request more data at the given priority. If a request is already in progress, it keeps its own priority.
+     *
+     * @see #requestAdditionalData()
+     */
+    public void requestAdditionalData(@NonNull Priority priority) {
         BackgroundUtils.ensureMainThread();
         clearPendingRunnable();
 
-        if (loadable.isThreadMode() && call == null) {
-            call = getData();
+        synchronized (this) {
+            if (loadable.isThreadMode() && call == null) {
+                this.priority = priority;
+                call = getData(true, requestGeneration);
+            }
         }
     }
 
@@ -195,44 +261,239 @@ public class ChanThreadLoader {
      */
     public long getTimeUntilLoadMore() {
         long waitTime = SECONDS.toMillis(WATCH_TIMEOUTS[Math.max(0, currentTimeout)]);
-        return call != null ? 0L : lastLoadTime + waitTime - System.currentTimeMillis();
+        synchronized (this) {
+            if (call != null) return 0L;
+        }
+        return lastLoadTime + waitTime - System.currentTimeMillis();
     }
 
-    private Call getData() {
-        List<Post> cachedClones = new ArrayList<>();
+    /**
+     * @return milliseconds since the currently shown thread was received, if it is a copy from the HTTP cache that is
+     * still being revalidated; -1 otherwise
+     */
+    public synchronized long getCachedCopyAge() {
+        return cachedCopyTime == -1L ? -1L : System.currentTimeMillis() - cachedCopyTime;
+    }
+
+    /**
+     * Show whatever is in the HTTP cache for this loadable right away, no matter how old it is; the network request is
+     * made afterwards, as a refresh of the cached copy.
+     */
+    private Call getCachedData(int generation) {
+        return NetUtils.makeRequest(NetUtils.applicationClient,
+                getChanUrl(loadable),
+                getConverter(false, false),
+                new ResponseResult<ChanLoaderResponse>() {
+                    @Override
+                    public void onFailure(Exception e) {
+                        // not cached or unreadable, this becomes a regular load
+                        requestFollowUp(generation, true);
+                    }
+
+                    @Override
+                    public void onSuccess(ChanLoaderResponse result) {
+                        if (result.posts.isEmpty()) {
+                            requestFollowUp(generation, true);
+                        } else {
+                            onResponseInternal(result, true, generation);
+                        }
+                    }
+                },
+                null,
+                CacheControl.FORCE_CACHE,
+                null,
+                priority
+        );
+    }
+
+    /**
+     * Make another request for the same load, unless that load was canceled or replaced meanwhile, or the loader was
+     * released; for a canceled request, that's not a cache miss or a failure to recover from.
+     */
+    private synchronized void requestFollowUp(int generation, boolean allowTail) {
+        if (generation != requestGeneration || listeners.isEmpty()) return;
+        call = getData(allowTail, generation);
+    }
+
+    // the callbacks of the current request ignore anything that comes in after this
+    private synchronized void cancelCall() {
+        requestGeneration++;
+        if (call != null) {
+            call.cancel();
+            call = null;
+        }
+    }
+
+    /**
+     * @param allowTail  if the loaded thread is large enough, only request the tail of the thread and merge it in
+     * @param generation the request generation this request belongs to
+     */
+    private Call getData(boolean allowTail, int generation) {
+        Headers.Builder conditionalHeaders = new Headers.Builder();
+        HttpUrl tailUrl = null;
+        boolean useCached;
         synchronized (this) {
-            List<Post> cached = thread == null ? new ArrayList<>() : thread.getPosts();
-            for (Post p : cached) {
-                cachedClones.add(p.clone());
+            useCached = thread != null;
+            // only worth it if the thread is larger than the tail, otherwise the full thread is just as large
+            if (allowTail && loadable.isThreadMode() && thread != null && tailSize > 0
+                    && thread.getPosts().size() > tailSize) {
+                tailUrl = loadable.board.site.endpoints().threadTail(loadable);
+            }
+
+            // only ask for a not modified response if there's something to reuse when that response comes in
+            if (thread != null) {
+                String requestEtag = tailUrl != null ? tailEtag : etag;
+                String requestLastModified = tailUrl != null ? tailLastModified : lastModified;
+                if (requestEtag != null) {
+                    conditionalHeaders.add("If-None-Match", requestEtag);
+                }
+                if (requestLastModified != null) {
+                    conditionalHeaders.add("If-Modified-Since", requestLastModified);
+                }
             }
         }
 
-        return NetUtils.makeJsonRequest(
-                getChanUrl(loadable),
+        final boolean tail = tailUrl != null;
+        return NetUtils.makeRequest(NetUtils.applicationClient,
+                tail ? tailUrl : getChanUrl(loadable),
+                // the cached posts are shared with the new response; the parser copies any post it changes
+                getConverter(useCached, tail),
                 new ResponseResult<ChanLoaderResponse>() {
                     @Override
                     public void onFailure(Exception e) {
-                        notifyAboutError(e);
+                        if (e instanceof HttpCodeException && ((HttpCodeException) e).isNotModified()) {
+                            onNotModifiedInternal(generation);
+                        } else if (tail && (e instanceof TailNotContiguousException
+                                || e instanceof HttpCodeException)) {
+                            // the tail can't be merged or isn't available, get the whole thread instead
+                            requestFollowUp(generation, false);
+                        } else {
+                            notifyAboutError(e, generation);
+                        }
                     }
 
                     @Override
                     public void onSuccess(ChanLoaderResponse result) {
                         if (result.posts.isEmpty()) {
-                            notifyAboutError(new Exception("No posts in thread!"));
+                            notifyAboutError(new Exception("No posts in thread!"), generation);
                         } else {
-                            onResponseInternal(result);
+                            onResponseInternal(result, false, generation);
                         }
                     }
                 },
-                new ChanReaderParser(loadable, cachedClones, null),
-                null,
                 (source, bytesRead, contentLength, start, done) -> {
                     for (ProgressListener listener : progressListeners) {
                         listener.onDownloadProgress(source, bytesRead, contentLength, start, done);
                     }
-                }
+                },
+                null,
+                conditionalHeaders.build(),
+                priority
         );
-        // TODO for cached thread loading, use a cacheControl with maxStale set so it loads a cached response
+    }
+
+    /**
+     * Loads that don't reuse any posts give the same result for any loader of an equal loadable, so those can share a
+     * call with other loaders, like a filter watch loading the catalog that is also shown.
+     *
+     * @param useCached if the posts of the loaded thread should be reused for the response
+     */
+    private ChainConverter<ChanLoaderResponse, Response> getConverter(boolean useCached, boolean tail) {
+        ChainConverter<ChanLoaderResponse, Response> converter =
+                new ChainConverter<>(response -> convertResponse(response, useCached, tail));
+        if (useCached) return converter;
+        return converter.withShareToken("ChanThreadLoader " + loadable.siteId + " " + loadable.mode + " "
+                + loadable.boardCode + " " + loadable.no);
+    }
+
+    /**
+     * @param useCached if the posts of the loaded thread should be reused for this response
+     */
+    private ChanLoaderResponse convertResponse(Response response, boolean useCached, boolean tail)
+            throws Exception {
+        List<Post> cached = new ArrayList<>();
+        ReplyGraph cachedReplyGraph = null;
+        int cachedFilterVersion = -1;
+        synchronized (this) {
+            if (useCached && thread != null) {
+                cached = thread.getPosts();
+                cachedReplyGraph = thread.getReplyGraph();
+                cachedFilterVersion = filterVersion;
+            }
+        }
+
+        ChanReaderParser parser =
+                new ChanReaderParser(loadable, cached, cachedReplyGraph, null, tail).withThreadCache(getThreadCache());
+        ChanLoaderResponse result = new ChainConverter<>(parser).chain(JSON_CONVERTER).convert(response);
+        if (result != null) {
+            result.etag = response.header("ETag");
+            result.lastModified = response.header("Last-Modified");
+            result.fromTail = tail;
+            result.receivedAt = response.receivedResponseAtMillis();
+            // reused posts keep the filters they were filtered with
+            if (!cached.isEmpty() && cachedFilterVersion != result.filterVersion) {
+                result.filterVersion = -1;
+            }
+        }
+        return result;
+    }
+
+    // does disk IO the first time, and whenever the parser configuration changed since
+    private ParsedPostCache.ThreadCache getThreadCache() {
+        PostParser postParser = loadable.site.chanReader().getParser();
+        ParsedPostCache.ThreadCache localCache;
+        synchronized (this) {
+            localCache = threadCache;
+        }
+        if (localCache == null || !localCache.isCurrent(postParser)) {
+            localCache = instance(ParsedPostCache.class).open(loadable, postParser);
+            synchronized (this) {
+                threadCache = localCache;
+            }
+        }
+        return localCache;
+    }
+
+    /**
+     * Apply the current filters to the posts of the loaded thread again, in the background; if that changes any post,
+     * listeners are sent the thread once. Nothing happens if the posts were already filtered with the current filters.
+     * <br>
+     * Debug filters mark what they matched while the posts are parsed, so with those on, this does nothing.
+     */
+    public void reapplyFilters() {
+        if (ChanSettings.debugFilters.get()) return;
+
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            while (true) {
+                int currentVersion = instance(FilterEngine.class).getSnapshot().getVersion();
+                List<Post> posts;
+                ReplyGraph replyGraph;
+                synchronized (this) {
+                    if (thread == null || filterVersion == currentVersion) return;
+                    posts = thread.getPosts();
+                    replyGraph = thread.getReplyGraph();
+                }
+
+                ChanReaderParser parser = new ChanReaderParser(loadable, posts, replyGraph, null, false);
+                ChanLoaderResponse result = parser.reapplyFilters();
+
+                ChanThread localThread;
+                synchronized (this) {
+                    // a response came in meanwhile, which may have reused the posts as they were; do it again
+                    if (thread == null || thread.getPosts() != posts) continue;
+
+                    localThread = thread;
+                    filterVersion = parser.getFilterVersion();
+                    if (result == null) return;
+                    thread.setNewPosts(result.posts, result.replyGraph);
+                }
+
+                for (ResponseResult<ChanThread> l : listeners) {
+                    BackgroundUtils.runOnMainThread(() -> l.onSuccess(localThread));
+                }
+                return;
+            }
+        });
     }
 
     private HttpUrl getChanUrl(Loadable loadable) {
@@ -245,41 +506,51 @@ public class ChanThreadLoader {
         }
     }
 
-    private void onResponseInternal(ChanLoaderResponse response) {
+    /**
+     * @param fromCache if this response is from the HTTP cache; the thread is shown, but a network request is made
+     *                  immediately after to revalidate it
+     */
+    private void onResponseInternal(ChanLoaderResponse response, boolean fromCache, int generation) {
         BackgroundUtils.ensureBackgroundThread();
 
-        call = null;
-        clearTimer();
-
         synchronized (this) {
+            // canceled or replaced by another request meanwhile
+            if (generation != requestGeneration) return;
+            if (!fromCache) {
+                call = null;
+            }
             if (thread == null) {
                 thread = new ChanThread(loadable, new ArrayList<>());
             }
 
-            thread.setNewPosts(response.posts);
+            thread.setNewPosts(response.posts, response.replyGraph);
+            filterVersion = response.filterVersion;
+            if (response.fromTail) {
+                tailEtag = response.etag;
+                tailLastModified = response.lastModified;
+            } else {
+                etag = response.etag;
+                lastModified = response.lastModified;
+            }
+            if (response.op != null) {
+                tailSize = response.op.tailSize;
+            }
+            cachedCopyTime = fromCache ? response.receivedAt : -1L;
         }
+        clearPendingRunnable();
 
         ChanThread localThread = thread;
         if (loadable.isThreadMode() && thread.getPosts().size() > 0) {
-            // Replace some op parameters to the real op (index 0).
-            // This is done on the main thread to avoid race conditions.
-            Post realOp = thread.getOp();
+            // the parser already put the op's state on the real op (index 0), copying it if it changed
             if (response.op != null) {
-                realOp.setClosed(response.op.closed);
-                realOp.setArchived(response.op.archived);
-                realOp.setSticky(response.op.sticky);
-                realOp.setReplies(response.op.replies);
-                realOp.setImagesCount(response.op.imagesCount);
-                realOp.setUniqueIps(response.op.uniqueIps);
-                realOp.setLastModified(response.op.lastModified);
-
-                thread.setClosed(realOp.isClosed());
-                thread.setArchived(realOp.isArchived());
+                thread.setClosed(response.op.closed);
+                thread.setArchived(response.op.archived);
             } else {
                 Logger.e(this, "Thread has no op!");
             }
         }
 
+        // the parser already set this title on the posts, copying any that had another one
         loadable.title = PostHelper.getTitle(localThread.getOp(), loadable);
         try {
             loadable.thumbnailUrl = localThread.getOp().image().getThumbnailUrl();
@@ -287,20 +558,17 @@ public class ChanThreadLoader {
             loadable.thumbnailUrl = null;
         }
 
-        for (Post post : localThread.getPosts()) {
-            post.setTitle(loadable.title);
-        }
-
-        lastLoadTime = System.currentTimeMillis();
+        if (!fromCache) {
+            lastLoadTime = System.currentTimeMillis();
 
-        int postCount = localThread.getPosts().size();
-        if (postCount > lastPostCount) {
-            // fresh posts, reset timer to minimum 10 seconds, or if sticky 30
-            lastPostCount = postCount;
-            currentTimeout = localThread.getOp().isSticky() ? 3 : 0;
-        } else {
-            // no new posts, increase timer; if -1, this becomes 0 in the case of a fresh load
-            currentTimeout = Math.min(currentTimeout + 1, WATCH_TIMEOUTS.length - 1);
+            int postCount = localThread.getPosts().size();
+            if (postCount > lastPostCount) {
+                // fresh posts, reset timer to minimum 10 seconds, or if sticky 30
+                lastPostCount = postCount;
+                currentTimeout = localThread.getOp().isSticky() ? 3 : 0;
+            } else {
+                increaseTimeout();
+            }
         }
 
         DatabaseUtils.runTaskAsync(instance(DatabaseLoadableManager.class).updateLoadable(loadable, false));
@@ -308,10 +576,61 @@ public class ChanThreadLoader {
         for (ResponseResult<ChanThread> l : listeners) {
             BackgroundUtils.runOnMainThread(() -> l.onSuccess(localThread));
         }
+
+        if (fromCache) {
+            // revalidate; as the cached copy is now the loaded thread, this only has to process what changed
+            requestFollowUp(generation, true);
+        }
+
+        // the filters changed while this was loading, or reused posts were filtered with older ones; catalogs are only
+        // ever loaded fresh, and their listeners count on one response per load
+        if (loadable.isThreadMode()) {
+            reapplyFilters();
+        }
+    }
+
+    /**
+     * The server responded to a conditional request with a 304; nothing was parsed and the current thread is still
+     * up to date, so this is treated the same as a response with no new posts.
+     */
+    private void onNotModifiedInternal(int generation) {
+        synchronized (this) {
+            if (generation != requestGeneration) return;
+            call = null;
+            cachedCopyTime = -1L;
+        }
+        clearPendingRunnable();
+
+        ChanThread localThread = thread;
+        if (localThread == null) {
+            notifyAboutError(new Exception("Not modified response without a loaded thread!"), generation);
+            return;
+        }
+
+        lastLoadTime = System.currentTimeMillis();
+        increaseTimeout();
+
+        for (ResponseResult<ChanThread> l : listeners) {
+            if (l instanceof NotModifiedResponseResult) {
+                BackgroundUtils.runOnMainThread(() -> ((NotModifiedResponseResult<ChanThread>) l).onNotModified(
+                        localThread));
+            } else {
+                BackgroundUtils.runOnMainThread(() -> l.onSuccess(localThread));
+            }
+        }
     }
 
-    private void notifyAboutError(Exception exception) {
-        call = null;
+    private void increaseTimeout() {
+        // no new posts, increase timer; if -1, this becomes 0 in the case of a fresh load
+        currentTimeout = Math.min(currentTimeout + 1, WATCH_TIMEOUTS.length - 1);
+    }
+
+    private void notifyAboutError(Exception exception, int generation) {
+        synchronized (this) {
+            if (generation != requestGeneration) return;
+            call = null;
+            cachedCopyTime = -1L;
+        }
         clearTimer();
 
         Logger.e(this, "Loading error", exception);
@@ -24,6 +24,15 @@ public interface ChanReader {
     void loadThread(JsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception;
 
+    /**
+     * Load a partial thread response, from {@link com.github.adamantcheese.chan.core.site.SiteEndpoints#threadTail}.
+     * By default this is assumed to be in the same format as a full thread.
+     */
+    default void loadThreadTail(JsonReader reader, ChanReaderProcessingQueue queue)
+            throws Exception {
+        loadThread(reader, queue);
+    }
+
     void loadCatalog(JsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception;
 
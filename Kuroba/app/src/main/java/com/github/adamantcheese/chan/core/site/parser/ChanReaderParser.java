@@ -24,17 +24,19 @@ import androidx.annotation.Nullable;
 import com.github.adamantcheese.chan.core.database.DatabaseHideManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
 import com.github.adamantcheese.chan.core.manager.FilterEngine;
+import com.github.adamantcheese.chan.core.manager.FilterMatcher;
+import com.github.adamantcheese.chan.core.manager.FilterSnapshot;
 import com.github.adamantcheese.chan.core.model.Post;
-import com.github.adamantcheese.chan.core.model.orm.Filter;
+import com.github.adamantcheese.chan.core.model.ReplyGraph;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.PostHide;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 import com.github.adamantcheese.chan.core.site.loader.ChanLoaderResponse;
-import com.github.adamantcheese.chan.ui.theme.Theme;
+import com.github.adamantcheese.chan.ui.helper.PostHelper;
 import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
-import com.github.adamantcheese.chan.utils.BackgroundUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -42,9 +44,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -57,6 +56,7 @@ import static com.github.adamantcheese.chan.Chan.inject;
  */
 public class ChanReaderParser
         implements NetUtilsClasses.Converter<ChanLoaderResponse, JsonReader> {
+    public static final ParseTimings parseTimings = new ParseTimings();
 
     @Inject
     FilterEngine filterEngine;
@@ -67,11 +67,20 @@ public class ChanReaderParser
     @Inject
     DatabaseHideManager databaseHideManager;
 
+    @Inject
+    ParsedPostCache parsedPostCache;
+
     private final Loadable loadable;
     private final List<Post> cached;
+    @Nullable
+    private final ReplyGraph cachedReplyGraph;
     private final ChanReader reader;
+    private final boolean tail;
 
-    private final List<Filter> filters;
+    private final FilterMatcher filters;
+    private final int filterVersion;
+    @Nullable
+    private ParsedPostCache.ThreadCache threadCache;
 
     /**
      * @param loadable    The loadable associated with this parser
@@ -79,66 +88,203 @@ public class ChanReaderParser
      * @param reader      A reader to process posts for a request; if null, the reader associated with the loadable's site will be used
      */
     public ChanReaderParser(Loadable loadable, @NonNull List<Post> cachedPosts, @Nullable ChanReader reader) {
+        this(loadable, cachedPosts, null, reader, false);
+    }
+
+    /**
+     * @param loadable         The loadable associated with this parser
+     * @param cachedPosts      A list of cached posts; may be an empty list for no cached post processing
+     * @param cachedReplyGraph The reply graph of the cached posts, if any; the new posts' replies are appended to it
+     * @param reader           A reader to process posts for a request; if null, the reader associated with the loadable's site will be used
+     * @param tail             If the response is only the tail of a thread, which will be merged into the cached posts
+     */
+    public ChanReaderParser(
+            Loadable loadable,
+            @NonNull List<Post> cachedPosts,
+            @Nullable ReplyGraph cachedReplyGraph,
+            @Nullable ChanReader reader,
+            boolean tail
+    ) {
         inject(this);
 
         // Copy the cached list. The cached array may changed/cleared by other threads.
         this.loadable = loadable;
         cached = new ArrayList<>(cachedPosts);
+        this.cachedReplyGraph = cachedReplyGraph;
         this.reader = reader == null ? this.loadable.site.chanReader() : reader;
+        this.tail = tail && loadable.isThreadMode();
 
-        filters = new ArrayList<>();
-        List<Filter> enabledFilters = filterEngine.getEnabledFilters();
-        for (Filter filter : enabledFilters) {
-            if (filterEngine.matchesBoard(filter, this.loadable.board)) {
-                // copy the filter because it will get used on other threads
-                filters.add(filter.clone());
-            }
-        }
+        FilterSnapshot snapshot = filterEngine.getSnapshot();
+        filters = snapshot.getFilterMatcher(this.loadable.board);
+        filterVersion = snapshot.getVersion();
+    }
+
+    /**
+     * @param threadCache the already open parsed comment cache for the loadable, so it isn't read from disk again
+     */
+    public ChanReaderParser withThreadCache(@Nullable ParsedPostCache.ThreadCache threadCache) {
+        this.threadCache = threadCache;
+        return this;
+    }
+
+    /**
+     * @return the version of the filters that this parser applies
+     */
+    public int getFilterVersion() {
+        return filterVersion;
     }
 
     @Override
     public ChanLoaderResponse convert(JsonReader reader)
             throws Exception {
-        ChanReaderProcessingQueue processing = new ChanReaderProcessingQueue(cached, loadable);
-
-        if (loadable.isThreadMode()) {
-            this.reader.loadThread(reader, processing);
-        } else if (loadable.isCatalogMode()) {
-            this.reader.loadCatalog(reader, processing);
-        } else {
-            throw new IllegalArgumentException("Unknown mode");
+        long start = System.nanoTime();
+        // what is known about the thread before reading; the pipeline uses this until the whole response is read
+        RemovedPostIndex threadRemovedPosts =
+                loadable.isThreadMode() ? getRemovedPosts(loadable.no) : newRemovedPostIndex();
+        RemovedPostIndex knownRemovedPosts = new RemovedPostIndex(threadRemovedPosts);
+        Set<Integer> knownNos = new HashSet<>();
+        for (Post post : cached) {
+            knownNos.add(post.no);
+            if (post.filterRemove) {
+                knownRemovedPosts.add(post.no, RemovedPostIndex.REMOVED);
+            }
         }
 
-        List<PostHide> removedPosts;
+        PostParsePipeline pipeline = new PostParsePipeline(loadable,
+                filters,
+                databaseSavedReplyManager,
+                this.reader,
+                ThemeHelper.getTheme(),
+                parsedPostCache,
+                threadCache,
+                knownNos,
+                knownRemovedPosts
+        );
+        ChanReaderProcessingQueue processing = new ChanReaderProcessingQueue(cached, loadable, pipeline);
+
         try {
-            removedPosts = databaseHideManager.getRemovedPostsWithThreadNo(processing.getOp().no);
+            if (tail) {
+                this.reader.loadThreadTail(reader, processing);
+                if (!processing.isContiguousWithCache()) {
+                    throw new TailNotContiguousException();
+                }
+            } else if (loadable.isThreadMode()) {
+                this.reader.loadThread(reader, processing);
+            } else if (loadable.isCatalogMode()) {
+                this.reader.loadCatalog(reader, processing);
+            } else {
+                throw new IllegalArgumentException("Unknown mode");
+            }
+
+            int opNo = processing.getOp().no;
+            RemovedPostIndex removedPosts = loadable.isThreadMode() && opNo == loadable.no
+                    ? new RemovedPostIndex(threadRemovedPosts)
+                    : getRemovedPosts(opNo);
+
+            // add in extra removed posts from filters (for cached posts); a tail doesn't contain all cached posts
+            for (Post post : tail ? cached : processing.getToReuse()) {
+                if (post.filterRemove) {
+                    removedPosts.add(post.no, RemovedPostIndex.REMOVED);
+                }
+            }
+
+            List<Post> list = parsePosts(processing, pipeline, removedPosts);
+            ChanLoaderResponse response =
+                    processPosts(processing.getOp(), list, removedPosts, tail ? processing.getFirstReplyNo() : -1);
+            parseTimings.addLoad(list.size(),
+                    processing.getToParse().size(),
+                    pipeline.getChunkCount(),
+                    System.nanoTime() - start,
+                    pipeline.getFinishNanos()
+            );
+            return response;
         } catch (Exception e) {
-            removedPosts = Collections.emptyList();
+            // the call was cancelled or failed mid-stream, or the response can't be used; drop any pending parsing
+            pipeline.cancel();
+            throw e;
         }
+    }
 
-        // add in extra removed posts from filters (for cached posts)
-        for (Post post : processing.getToReuse()) {
-            if (post.filterRemove) {
-                removedPosts.add(new PostHide(post.board.siteId, post.boardCode, post.no));
+    /**
+     * Apply the current filters to the cached posts again, without parsing anything. Only the filter flags of the posts
+     * are changed, and the replies if the removed posts changed; posts that keep their flags are left as they are.
+     * Images that a filter hid or removed when the post was parsed are left that way.
+     *
+     * @return the cached posts with the filters applied, or null if none of them changed
+     */
+    @Nullable
+    public ChanLoaderResponse reapplyFilters() {
+        List<Post> allPosts = new ArrayList<>(cached);
+        CopyOnWritePosts posts = new CopyOnWritePosts(allPosts, allPosts.size());
+        boolean changed = false;
+        boolean removedChanged = false;
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            Post.Builder builder = post.unfilteredBuilder();
+            filters.apply(builder, true);
+            if (post.hasSameFilters(builder)) continue;
+
+            changed = true;
+            removedChanged |= post.filterRemove != builder.filterRemove;
+            posts.set(i, post.withFilters(builder));
+        }
+        if (!changed) return null;
+
+        // nothing about the op changed
+        ChanLoaderResponse response = new ChanLoaderResponse(null);
+        response.replyGraph = cachedReplyGraph;
+        if (removedChanged && loadable.isThreadMode()) {
+            // replies from removed posts aren't shown
+            RemovedPostIndex removedPosts = getRemovedPosts(loadable.no);
+            for (Post post : allPosts) {
+                if (post.filterRemove) {
+                    removedPosts.add(post.no, RemovedPostIndex.REMOVED);
+                }
+            }
+
+            ReplyGraph replyGraph = ReplyGraph.build(allPosts, removedPosts.contentHash());
+            if (replyGraph != null) {
+                setAllReplies(replyGraph, posts, removedPosts);
+            } else {
+                setAllRepliesByNo(posts, removedPosts);
             }
+            response.replyGraph = replyGraph;
         }
 
-        List<Post> list = parsePosts(processing, removedPosts);
-        return processPosts(processing.getOp(), list, removedPosts);
+        response.posts.addAll(allPosts);
+        response.filterVersion = filterVersion;
+        return response;
+    }
+
+    private RemovedPostIndex getRemovedPosts(int threadNo) {
+        RemovedPostIndex removedPosts = newRemovedPostIndex();
+        try {
+            for (PostHide postHide : databaseHideManager.getRemovedPostsWithThreadNo(threadNo)) {
+                // the query is by thread number only, the index skips hides for other boards
+                removedPosts.add(postHide);
+            }
+        } catch (Exception ignored) {
+        }
+        return removedPosts;
     }
 
-    // Concurrently parses the new posts with an executor
-    private List<Post> parsePosts(ChanReaderProcessingQueue queue, List<PostHide> removedPosts)
-            throws InterruptedException, ExecutionException {
-        List<Post> cached = queue.getToReuse();
-        List<Post> total = new ArrayList<>(cached);
+    private RemovedPostIndex newRemovedPostIndex() {
+        return new RemovedPostIndex(loadable.board.siteId, loadable.board.code);
+    }
 
+    // Waits for the posts that were parsed while the response was read
+    private List<Post> parsePosts(
+            ChanReaderProcessingQueue queue, PostParsePipeline pipeline, RemovedPostIndex removedPosts
+    ) {
+        List<Post> cached = queue.getToReuse();
         List<Post.Builder> toParse = queue.getToParse();
+        List<Post> total = new ArrayList<>(cached.size() + toParse.size());
+        total.addAll(cached);
 
         // A set of all post numbers in the thread. Used for checking if a quote if for the current thread or externally.
         Set<Integer> internalNums = new HashSet<>();
-        // All nos of cached posts.
-        for (Post post : cached) {
+        // All nos of cached posts. For a tail, that's everything that was cached, not only what was in the response.
+        for (Post post : tail ? this.cached : cached) {
             internalNums.add(post.no);
         }
         // And nos for posts to parse, from the builder.
@@ -148,35 +294,22 @@ public class ChanReaderParser
         // Do not modify internalNums after this point.
         internalNums = Collections.unmodifiableSet(internalNums);
 
-        List<Callable<Post>> tasks = new ArrayList<>(toParse.size());
-        final Theme currentTheme = ThemeHelper.getTheme();
-
-        for (Post.Builder post : toParse) {
-            tasks.add(new PostParseCallable(filters,
-                    databaseSavedReplyManager,
-                    post,
-                    reader,
-                    removedPosts,
-                    internalNums,
-                    currentTheme
-            ));
-        }
-
-        List<Future<Post>> futures = BackgroundUtils.backgroundService.invokeAll(tasks);
-        for (Future<Post> f : futures) {
-            Post p = f.get();
-            if (p != null) {
-                total.add(p);
-            }
-        }
+        total.addAll(pipeline.finish(internalNums, removedPosts));
         return total;
     }
 
-    private ChanLoaderResponse processPosts(Post.Builder op, List<Post> allPost, List<PostHide> removedPosts) {
+    /**
+     * @param firstTailNo for tail responses, the first reply in the tail; cached posts before it are not checked for
+     *                    deletion, as they weren't part of the response. -1 for full responses.
+     */
+    private ChanLoaderResponse processPosts(
+            Post.Builder op, List<Post> allPost, RemovedPostIndex removedPosts, int firstTailNo
+    ) {
         ChanLoaderResponse response = new ChanLoaderResponse(op);
 
         List<Post> cachedPosts = new ArrayList<>();
         List<Post> newPosts = new ArrayList<>();
+        Map<Integer, Post> serverPostsByNo = new HashMap<>();
         if (cached.size() > 0) {
             // Add all posts that were parsed before
             cachedPosts.addAll(cached);
@@ -186,18 +319,10 @@ public class ChanReaderParser
                 cachedPostsByNo.put(post.no, post);
             }
 
-            Map<Integer, Post> serverPostsByNo = new HashMap<>();
             for (Post post : allPost) {
                 serverPostsByNo.put(post.no, post);
             }
 
-            // If there's a cached post but it's not in the list received from the server, mark it as deleted
-            if (loadable.isThreadMode()) {
-                for (Post cachedPost : cachedPosts) {
-                    cachedPost.deleted.set(!serverPostsByNo.containsKey(cachedPost.no));
-                }
-            }
-
             // If there's a post in the list from the server, that's not in the cached list, add it.
             for (Post serverPost : allPost) {
                 if (!cachedPostsByNo.containsKey(serverPost.no)) {
@@ -211,61 +336,244 @@ public class ChanReaderParser
         List<Post> allPosts = new ArrayList<>(cachedPosts.size() + newPosts.size());
         allPosts.addAll(cachedPosts);
         allPosts.addAll(newPosts);
+        CopyOnWritePosts posts = new CopyOnWritePosts(allPosts, cachedPosts.size());
+
+        // If there's a cached post but it's not in the list received from the server, mark it as deleted
+        if (loadable.isThreadMode()) {
+            for (int i = 0; i < cachedPosts.size(); i++) {
+                Post cachedPost = cachedPosts.get(i);
+                if (firstTailNo != -1 && (cachedPost.isOP || cachedPost.no < firstTailNo)) continue;
+                boolean deleted = !serverPostsByNo.containsKey(cachedPost.no);
+                if (cachedPost.deleted.get() != deleted) {
+                    posts.edit(i).deleted.set(deleted);
+                }
+            }
+
+            if (op != null && posts.size() > 0) {
+                setOpState(posts, op);
+            }
+        }
+
+        if (posts.size() > 0) {
+            String title = PostHelper.getTitle(posts.get(0), loadable);
+            for (int i = 0; i < posts.size(); i++) {
+                if (!title.equals(posts.get(i).getTitle())) {
+                    posts.edit(i).setTitle(title);
+                }
+            }
+        }
+
+        // the removed posts that the replies of the cached posts depend on
+        long cachedRemovedPostsHash = removedPosts.contentHash();
 
         // add in removed posts from new posts
         for (Post post : newPosts) {
             if (post.filterRemove) {
-                removedPosts.add(new PostHide(post.board.siteId, post.boardCode, post.no));
+                removedPosts.add(post.no, RemovedPostIndex.REMOVED);
             }
         }
 
         if (loadable.isThreadMode()) {
-            Map<Integer, Post> postsByNo = new HashMap<>();
-            for (Post post : allPosts) {
-                postsByNo.put(post.no, post);
+            long removedPostsHash = removedPosts.contentHash();
+            ReplyGraph replyGraph = null;
+            // only new posts can add replies, unless the removed posts changed
+            if (cachedReplyGraph != null && cachedReplyGraph.getRemovedPostsHash() == cachedRemovedPostsHash
+                    && isReplyGraphOf(cachedReplyGraph, cachedPosts)) {
+                replyGraph = cachedReplyGraph.append(newPosts, removedPostsHash);
+                if (replyGraph != null) {
+                    addNewReplies(replyGraph, posts, cachedPosts.size(), removedPosts);
+                }
+            }
+            if (replyGraph == null) {
+                replyGraph = ReplyGraph.build(allPosts, removedPostsHash);
+                if (replyGraph != null) {
+                    setAllReplies(replyGraph, posts, removedPosts);
+                } else {
+                    setAllRepliesByNo(posts, removedPosts);
+                }
             }
+            response.replyGraph = replyGraph;
+        }
 
-            // Maps post no's to a list of no's that that post received replies from
-            Map<Integer, List<Integer>> replies = new HashMap<>();
-
-            // for all posts, for any posts this post is replying to (ie has >>1234), add this post to a list of numbers for the replying number
-            // ie map this post to another post's repliesFrom, temporarily
-            for (Post sourcePost : allPosts) {
-                for (int replyTo : sourcePost.repliesTo) {
-                    List<Integer> value = replies.get(replyTo);
-                    if (value == null) {
-                        value = new ArrayList<>(1);
-                        replies.put(replyTo, value);
-                    }
-                    value.add(sourcePost.no);
+        response.posts.addAll(allPosts);
+        response.filterVersion = filterVersion;
+
+        return response;
+    }
+
+    // The op of the response has the current state of the thread, which the cached op may not have yet
+    private static void setOpState(CopyOnWritePosts posts, Post.Builder op) {
+        Post realOp = posts.get(0);
+        if (realOp.isClosed() == op.closed && realOp.isArchived() == op.archived && realOp.isSticky() == op.sticky
+                && realOp.getReplies() == op.replies && realOp.getImagesCount() == op.imagesCount
+                && realOp.getUniqueIps() == op.uniqueIps && realOp.getLastModified() == op.lastModified) {
+            return;
+        }
+
+        realOp = posts.edit(0);
+        realOp.setClosed(op.closed);
+        realOp.setArchived(op.archived);
+        realOp.setSticky(op.sticky);
+        realOp.setReplies(op.replies);
+        realOp.setImagesCount(op.imagesCount);
+        realOp.setUniqueIps(op.uniqueIps);
+        realOp.setLastModified(op.lastModified);
+    }
+
+    private static boolean isReplyGraphOf(ReplyGraph replyGraph, List<Post> posts) {
+        // the graph is set together with the posts it was made for; this only catches a refresh in between
+        return replyGraph.size() == posts.size() && (posts.isEmpty()
+                || (replyGraph.getNo(0) == posts.get(0).no
+                && replyGraph.getNo(posts.size() - 1) == posts.get(posts.size() - 1).no));
+    }
+
+    // Adds the replies of the posts from firstNew on to the posts they reply to
+    private static void addNewReplies(
+            ReplyGraph replyGraph, CopyOnWritePosts posts, int firstNew, RemovedPostIndex removedPosts
+    ) {
+        for (int i = firstNew; i < replyGraph.size(); i++) {
+            int no = replyGraph.getNo(i);
+            if (removedPosts.isRemoved(no)) continue;
+            for (int edge = replyGraph.getRepliesStart(i); edge < replyGraph.getRepliesEnd(i); edge++) {
+                posts.edit(replyGraph.getTarget(edge)).repliesFrom.add(no);
+            }
+        }
+    }
+
+    // Sets the repliesFrom of all posts, leaving out replies from removed posts
+    private static void setAllReplies(
+            ReplyGraph replyGraph, CopyOnWritePosts posts, RemovedPostIndex removedPosts
+    ) {
+        // turn the graph around, the replies to post i are sources[start[i] .. start[i + 1] - 1]
+        int size = replyGraph.size();
+        int[] start = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            if (removedPosts.isRemoved(replyGraph.getNo(i))) continue;
+            for (int edge = replyGraph.getRepliesStart(i); edge < replyGraph.getRepliesEnd(i); edge++) {
+                start[replyGraph.getTarget(edge) + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] sources = new int[start[size]];
+        int[] next = Arrays.copyOf(start, size);
+        for (int i = 0; i < size; i++) {
+            int no = replyGraph.getNo(i);
+            if (removedPosts.isRemoved(no)) continue;
+            for (int edge = replyGraph.getRepliesStart(i); edge < replyGraph.getRepliesEnd(i); edge++) {
+                sources[next[replyGraph.getTarget(edge)]++] = no;
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            List<Integer> repliesFrom = new ArrayList<>(start[i + 1] - start[i]);
+            for (int j = start[i]; j < start[i + 1]; j++) {
+                repliesFrom.add(sources[j]);
+            }
+            posts.setRepliesFrom(i, repliesFrom);
+        }
+    }
+
+    // For threads that can't have a reply graph, because their post numbers aren't in order
+    private static void setAllRepliesByNo(CopyOnWritePosts posts, RemovedPostIndex removedPosts) {
+        Map<Integer, Integer> indexByNo = new HashMap<>();
+        for (int i = 0; i < posts.size(); i++) {
+            indexByNo.put(posts.get(i).no, i);
+        }
+
+        // Maps post no's to a list of no's that that post received replies from
+        Map<Integer, List<Integer>> replies = new HashMap<>();
+
+        // for all posts, for any posts this post is replying to (ie has >>1234), add this post to a list of numbers for the replying number
+        // ie map this post to another post's repliesFrom, temporarily
+        for (int i = 0; i < posts.size(); i++) {
+            Post sourcePost = posts.get(i);
+            for (int replyTo : sourcePost.repliesTo) {
+                List<Integer> value = replies.get(replyTo);
+                if (value == null) {
+                    value = new ArrayList<>(1);
+                    replies.put(replyTo, value);
                 }
+                value.add(sourcePost.no);
             }
+        }
 
-            // for all post numbers, now properly assign the repliesFrom field, removing any removed posts along the way
-            for (Map.Entry<Integer, List<Integer>> entry : replies.entrySet()) {
-                int key = entry.getKey();
-                List<Integer> value = entry.getValue();
-                Post subject = postsByNo.get(key);
-
-                // Sometimes a post replies to a ghost, a post that doesn't exist.
-                if (subject != null) {
-                    // If a post has been removed, remove it from the replies list
-                    Iterator<Integer> repliesFrom = value.iterator();
-                    while (repliesFrom.hasNext()) {
-                        Integer replyFrom = repliesFrom.next();
-                        if (removedPosts.contains(new PostHide(subject.board.siteId, subject.board.code, replyFrom))) {
-                            repliesFrom.remove();
-                        }
+        // for all post numbers, now properly assign the repliesFrom field, removing any removed posts along the way
+        for (Map.Entry<Integer, List<Integer>> entry : replies.entrySet()) {
+            int key = entry.getKey();
+            List<Integer> value = entry.getValue();
+            Integer subject = indexByNo.get(key);
+
+            // Sometimes a post replies to a ghost, a post that doesn't exist.
+            if (subject != null) {
+                // If a post has been removed, remove it from the replies list
+                Iterator<Integer> repliesFrom = value.iterator();
+                while (repliesFrom.hasNext()) {
+                    Integer replyFrom = repliesFrom.next();
+                    if (removedPosts.isRemoved(replyFrom)) {
+                        repliesFrom.remove();
                     }
-
-                    subject.repliesFrom.clear();
-                    subject.repliesFrom.addAll(value);
                 }
+
+                posts.setRepliesFrom(subject, value);
             }
         }
+    }
 
-        response.posts.addAll(allPosts);
+    /**
+     * The posts of a response. Cached posts are shared with the thread that is currently shown, so they are never
+     * changed; a post that needs to change is copied the first time it is edited, and the copy takes its place.
+     */
+    private static class CopyOnWritePosts {
+        private final List<Post> posts;
+        private final boolean[] owned;
+
+        /**
+         * @param firstNew posts from this index on are new to this response and can be changed as they are
+         */
+        private CopyOnWritePosts(List<Post> posts, int firstNew) {
+            this.posts = posts;
+            owned = new boolean[posts.size()];
+            Arrays.fill(owned, firstNew, posts.size(), true);
+        }
 
-        return response;
+        private int size() {
+            return posts.size();
+        }
+
+        private Post get(int index) {
+            return posts.get(index);
+        }
+
+        private Post edit(int index) {
+            if (!owned[index]) {
+                posts.set(index, posts.get(index).clone());
+                owned[index] = true;
+            }
+            return posts.get(index);
+        }
+
+        private void set(int index, Post post) {
+            posts.set(index, post);
+            owned[index] = true;
+        }
+
+        private void setRepliesFrom(int index, List<Integer> repliesFrom) {
+            if (get(index).repliesFrom.equals(repliesFrom)) return;
+            Post post = edit(index);
+            post.repliesFrom.clear();
+            post.repliesFrom.addAll(repliesFrom);
+        }
+    }
+
+    /**
+     * Thrown when a thread tail doesn't overlap the cached posts; the full thread needs to be loaded instead.
+     */
+    public static class TailNotContiguousException
+            extends Exception {
+        public TailNotContiguousException() {
+            super("Thread tail does not overlap cached posts");
+        }
     }
 }
@@ -16,6 +16,8 @@
  */
 package com.github.adamantcheese.chan.core.site.parser;
 
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 
@@ -31,9 +33,19 @@ public class ChanReaderProcessingQueue {
     private final List<Post> toReuse = new ArrayList<>();
     private final List<Post.Builder> toParse = new ArrayList<>();
     private Post.Builder op;
+    @Nullable
+    private final PostParsePipeline pipeline;
 
     public ChanReaderProcessingQueue(List<Post> toReuse, Loadable loadable) {
+        this(toReuse, loadable, null);
+    }
+
+    /**
+     * @param pipeline if set, posts to parse are handed to it as soon as they are read
+     */
+    ChanReaderProcessingQueue(List<Post> toReuse, Loadable loadable, @Nullable PostParsePipeline pipeline) {
         this.loadable = loadable;
+        this.pipeline = pipeline;
 
         for (Post cache : toReuse) {
             cachedByNo.put(cache.no, cache);
@@ -46,10 +58,16 @@ public class ChanReaderProcessingQueue {
 
     public void addForReuse(Post post) {
         toReuse.add(post);
+        if (pipeline != null) {
+            pipeline.onReuse(post);
+        }
     }
 
     public void addForParse(Post.Builder postBuilder) {
         toParse.add(postBuilder);
+        if (pipeline != null) {
+            pipeline.onParse(postBuilder);
+        }
     }
 
     public void setOp(Post.Builder op) {
@@ -67,4 +85,39 @@ public class ChanReaderProcessingQueue {
     public Post.Builder getOp() {
         return op;
     }
+
+    /**
+     * @return the lowest post number of all non-OP posts read into this queue, or -1 if there were none
+     */
+    int getFirstReplyNo() {
+        int first = -1;
+        for (Post post : toReuse) {
+            if (!post.isOP && (first == -1 || post.no < first)) {
+                first = post.no;
+            }
+        }
+        for (Post.Builder builder : toParse) {
+            if (!builder.op && (first == -1 || builder.no < first)) {
+                first = builder.no;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * For partial responses; if the read posts start after the last cached post, there may be posts in between that
+     * weren't part of the response, so the cached thread and the read posts can't be merged.
+     *
+     * @return true if there is no gap between the cached posts and the posts read into this queue
+     */
+    boolean isContiguousWithCache() {
+        if (cachedByNo.isEmpty()) return false;
+        int firstReplyNo = getFirstReplyNo();
+        if (firstReplyNo == -1) return true;
+        int lastCachedNo = -1;
+        for (int no : cachedByNo.keySet()) {
+            lastCachedNo = Math.max(lastCachedNo, no);
+        }
+        return firstReplyNo <= lastCachedNo;
+    }
 }
@@ -32,6 +32,7 @@ import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
+import androidx.collection.LruCache;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.manager.ArchivesManager;
@@ -50,7 +51,7 @@ import com.github.adamantcheese.chan.core.site.archives.ExternalSiteArchive.Arch
 import com.github.adamantcheese.chan.core.site.sites.chan4.Chan4;
 import com.github.adamantcheese.chan.ui.text.AbsoluteSizeSpanHashed;
 import com.github.adamantcheese.chan.ui.text.CustomTypefaceSpan;
-import com.github.adamantcheese.chan.ui.text.ForegroundColorSpanHashed;
+import com.github.adamantcheese.chan.ui.text.ThemeColorSpan;
 import com.github.adamantcheese.chan.ui.theme.Theme;
 import com.github.adamantcheese.chan.utils.Logger;
 import com.google.common.io.Files;
@@ -74,7 +75,6 @@ import static com.github.adamantcheese.chan.core.site.parser.StyleRule.tagRule;
 import static com.github.adamantcheese.chan.ui.widget.DefaultAlertDialog.getDefaultAlertBuilder;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.dp;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
-import static com.github.adamantcheese.chan.utils.AndroidUtils.getAttrColor;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.sp;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.updatePaddings;
 
@@ -86,7 +86,15 @@ public class CommentParser {
     private static final String EXTERN_THREAD_LINK_SUFFIX = " \u2192"; // arrow to the right
     public static final String EXIF_INFO_STRING = "[EXIF data available. Click here to view.]";
 
+    //hacky fix for 4chan having two domains but the same API
+    private static final Pattern CHAN4_THREAD_LINK_PATTERN =
+            Pattern.compile("//boards\\.4chan.*?\\.org/(.*?)/thread/(\\d*?)#p(\\d*)");
+    private static final String CHAN4_BOARDS_PREFIX = "//boards.4chan";
+    private static final int HREF_CACHE_SIZE = 512;
+
     private Pattern fullQuotePattern = Pattern.compile("/(\\w+)/\\w+/(\\d+)#p?(\\d+)");
+    // if set, hrefs that don't start with a slash are never full quotes and that pattern can be skipped for them
+    private boolean fullQuoteNeedsSlash = startsWithSlash(fullQuotePattern);
     private Pattern quotePattern = Pattern.compile(".*#p?(\\d+)");
 
     // A pattern matching any board links
@@ -97,6 +105,10 @@ public class CommentParser {
     // A pattern matching any board search links
     private final Pattern boardSearchPattern = Pattern.compile("//boards\\.4chan.*?\\.org/(.*?)/catalog#s=(.*)");
 
+    // What each href was matched as; this only depends on the href and the patterns above, so it is shared by all
+    // boards of the site and cleared when a pattern changes
+    private final LruCache<String, HrefMatch> hrefCache = new LruCache<>(HREF_CACHE_SIZE);
+
     // The list of rules for this parser, mapping an HTML tag to a list of StyleRules that need to be applied for that tag
     private final Map<String, List<StyleRule>> rules = new HashMap<>();
 
@@ -149,7 +161,7 @@ public class CommentParser {
                     String alt = element.attr("alt");
                     if (!alt.isEmpty()) {
                         ret = new SpannableString(alt + " ");
-                        ret.setSpan(new PostLinkable(theme, alt, Type.SPOILER),
+                        ret.setSpan(new PostLinkable(alt, Type.SPOILER),
                                 0,
                                 alt.length(),
                                 (1000 << Spanned.SPAN_PRIORITY_SHIFT) & Spanned.SPAN_PRIORITY
@@ -193,6 +205,7 @@ public class CommentParser {
      */
     public void setQuotePattern(Pattern quotePattern) {
         this.quotePattern = quotePattern;
+        hrefCache.evictAll();
     }
 
     /**
@@ -201,12 +214,45 @@ public class CommentParser {
      */
     public void setFullQuotePattern(Pattern fullQuotePattern) {
         this.fullQuotePattern = fullQuotePattern;
+        fullQuoteNeedsSlash = startsWithSlash(fullQuotePattern);
+        hrefCache.evictAll();
+    }
+
+    // true if the pattern can only match strings starting with a slash; anything unusual is assumed to match anything
+    private static boolean startsWithSlash(Pattern pattern) {
+        String regex = pattern.pattern();
+        return regex.length() > 1 && regex.charAt(0) == '/' && "?*{".indexOf(regex.charAt(1)) < 0
+                && regex.indexOf('|') < 0 && (pattern.flags() & Pattern.COMMENTS) == 0;
     }
 
     public String createQuoteElementString(Post.Builder post) {
         return "<a href=\"/" + post.board.code + "/thread/" + post.opId + "#p$1\">&gt;&gt;$1</a>";
     }
 
+    /**
+     * @return true if handleTag only looks at an element's own tag and attributes, and never at its parent, siblings or
+     * children; this lets the post parser stream through a comment with detached elements instead of building a DOM
+     */
+    public boolean handlesDetachedElements() {
+        return true;
+    }
+
+    /**
+     * Style the text from start to the end of the builder for the given element in place, if the element only adds
+     * spans to its text; this saves copying the text for every element around it. Parsers that handle tags themselves
+     * in {@link #handleTag(PostParser.Callback, Theme, Post.Builder, String, CharSequence, Element)} must not apply
+     * those tags here.
+     *
+     * @return false if nothing was done, and handleTag has to be used instead
+     */
+    public boolean applyTagInPlace(String tag, SpannableStringBuilder text, int start, Element element) {
+        StyleRule rule = getRule(tag, element);
+        if (rule == null) return true; // unknown tags leave the text as it is
+        if (!rule.appliesInPlace()) return false;
+        rule.applyInPlace(text, start, element);
+        return true;
+    }
+
     public CharSequence handleTag(
             PostParser.Callback callback,
             @NonNull Theme theme,
@@ -215,20 +261,29 @@ public class CommentParser {
             CharSequence text,
             Element element
     ) {
+        StyleRule rule = getRule(tag, element);
+        if (rule != null) {
+            return rule.apply(theme, callback, post, text, element);
+        }
+
+        // Unknown tag, return the text;
+        return text;
+    }
+
+    @Nullable
+    private StyleRule getRule(String tag, Element element) {
         List<StyleRule> rules = this.rules.get(tag);
         if (rules != null) {
             for (int i = 0; i < 2; i++) {
                 boolean highPriority = i == 0;
                 for (StyleRule rule : rules) {
                     if (rule.highPriority() == highPriority && rule.applies(element)) {
-                        return rule.apply(theme, callback, post, text, element);
+                        return rule;
                     }
                 }
             }
         }
-
-        // Unknown tag, return the text;
-        return text;
+        return null;
     }
 
     private CharSequence handleAnchor(
@@ -293,7 +348,7 @@ public class CommentParser {
         }
 
         SpannableString res = new SpannableString(handlerLink.key);
-        PostLinkable pl = new PostLinkable(theme, handlerLink.value, handlerLink.type);
+        PostLinkable pl = new PostLinkable(handlerLink.value, handlerLink.type);
         res.setSpan(pl, 0, res.length(), (250 << Spanned.SPAN_PRIORITY_SHIFT) & Spanned.SPAN_PRIORITY);
 
         spannableStringBuilder.append(res);
@@ -328,7 +383,7 @@ public class CommentParser {
 
         // Overrides the text (possibly) parsed by child nodes.
         return span(EXIF_INFO_STRING,
-                new PostLinkable(theme, new Object(), Type.OTHER) {
+                new PostLinkable(new Object(), Type.OTHER) {
                     @Override
                     public void onClick(@NonNull View widget) {
                         AlertDialog dialog = getDefaultAlertBuilder(widget.getContext()).setMessage(parts)
@@ -338,7 +393,7 @@ public class CommentParser {
                         dialog.show();
                     }
                 },
-                new ForegroundColorSpanHashed(getAttrColor(theme.resValue, R.attr.post_inline_quote_color)),
+                new ThemeColorSpan(R.attr.post_inline_quote_color),
                 new AbsoluteSizeSpanHashed((int) sp(12f))
         );
     }
@@ -352,7 +407,7 @@ public class CommentParser {
         SpannableStringBuilder sjisArt = new SpannableStringBuilder(text);
         sjisArt.setSpan(new CustomTypefaceSpan("", submona), 0, sjisArt.length(), 0);
         return span("[SJIS art available. Click here to view.]",
-                new PostLinkable(theme, new Object(), Type.OTHER) {
+                new PostLinkable(new Object(), Type.OTHER) {
                     @Override
                     public void onClick(@NonNull View widget) {
                         TextView sjisView = new TextView(widget.getContext());
@@ -367,7 +422,7 @@ public class CommentParser {
                         dialog.show();
                     }
                 },
-                new ForegroundColorSpanHashed(getAttrColor(theme.resValue, R.attr.post_inline_quote_color)),
+                new ThemeColorSpan(R.attr.post_inline_quote_color),
                 new AbsoluteSizeSpanHashed((int) sp(12f))
         );
     }
@@ -378,10 +433,10 @@ public class CommentParser {
         //crossboard thread links in the OP are likely not thread links, so just let them error out on the parseInt
         try {
             if (!(builder.board.site instanceof Chan4)) return text; //4chan only
-            int postNo = Integer.parseInt(deadlink.text().substring(2));
+            int postNo = Integer.parseInt(text.toString().trim().substring(2));
             List<ExternalSiteArchive> boards = ArchivesManager.getInstance().archivesForBoard(builder.board);
             if (!boards.isEmpty()) {
-                PostLinkable newLinkable = new PostLinkable(theme,
+                PostLinkable newLinkable = new PostLinkable(
                         // if the deadlink is in an external archive, set a resolve link
                         // if the deadlink is in any other site, we don't have enough info to properly link to stuff, so
                         // we assume that deadlinks in an OP are previous threads
@@ -407,72 +462,45 @@ public class CommentParser {
     public Link matchAnchor(Post.Builder post, CharSequence text, Element anchor, PostParser.Callback callback)
             throws Exception {
         String href = anchor.attr("href");
-        //gets us something like /board/ or /thread/postno#quoteno
-        //hacky fix for 4chan having two domains but the same API
-        if (href.matches("//boards\\.4chan.*?\\.org/(.*?)/thread/(\\d*?)#p(\\d*)")) {
-            href = href.substring(2);
-            href = href.substring(href.indexOf('/'));
+        HrefMatch match = hrefCache.get(href);
+        if (match == null) {
+            match = matchHref(href);
+            hrefCache.put(href, match);
         }
 
         Type t;
         Object value;
 
-        Matcher externalMatcher = fullQuotePattern.matcher(href);
-        if (externalMatcher.matches()) {
-            String board = externalMatcher.group(1);
-            int threadId = Integer.parseInt(externalMatcher.group(2));
-            String postNo = externalMatcher.group(3);
-            int postId = postNo == null ? -1 : Integer.parseInt(postNo);
-
-            if (board.equals(post.board.code) && callback.isInternal(postId)) {
+        if (match.type == null) {
+            if (match.board.equals(post.board.code) && callback.isInternal(match.postId)) {
                 //link to post in same thread with post number (>>post); usually this is a almost fully qualified link
                 t = Type.QUOTE;
-                value = postId;
+                value = match.postId;
             } else {
                 //link to post not in same thread with post number (>>post or >>>/board/post)
                 //in the case of an archive, set the type to be an archive link
                 t = post.board.site instanceof ExternalSiteArchive ? Type.ARCHIVE : Type.THREAD;
-                value = new ThreadLink(board, threadId, postId);
-                if (href.contains("post") && post.board.site instanceof ExternalSiteArchive) {
+                value = new ThreadLink(match.board, match.threadId, match.postId);
+                if (match.text.contains("post") && post.board.site instanceof ExternalSiteArchive) {
                     // this is an archive post link that needs to be resolved into a threadlink
-                    value = new ResolveLink(post.board.site, board, threadId);
+                    value = new ResolveLink(post.board.site, match.board, match.threadId);
                 }
             }
         } else {
-            Matcher quoteMatcher = quotePattern.matcher(href);
-            if (quoteMatcher.matches()) {
-                //link to post in the same thread with post number (>>post); usually this is a #num href
-                t = Type.QUOTE;
-                value = Integer.parseInt(quoteMatcher.group(1));
-            } else {
-                Matcher boardLinkMatcher = boardLinkPattern.matcher(href);
-                Matcher boardLinkMatcher8Chan = boardLinkPattern8Chan.matcher(href);
-                Matcher boardSearchMatcher = boardSearchPattern.matcher(href);
-                if (boardLinkMatcher.matches() || boardLinkMatcher8Chan.matches()) {
-                    //board link
-                    t = Type.BOARD;
-                    value = (boardLinkMatcher.matches() ? boardLinkMatcher : boardLinkMatcher8Chan).group(1);
-                } else if (boardSearchMatcher.matches()) {
-                    //search link
-                    String board = boardSearchMatcher.group(1);
-                    String search;
-                    try {
-                        search = URLDecoder.decode(boardSearchMatcher.group(2), "US-ASCII");
-                    } catch (UnsupportedEncodingException e) {
-                        search = boardSearchMatcher.group(2);
-                    }
-                    t = Type.SEARCH;
-                    value = new SearchLink(board, search);
-                } else {
-                    if (href.startsWith("javascript:")) {
-                        //this link would run javascript on the source webpage, open this in a webview
-                        t = Type.JAVASCRIPT;
-                    } else {
-                        //normal link
-                        t = Type.LINK;
-                    }
-                    value = href;
-                }
+            t = match.type;
+            switch (t) {
+                case QUOTE:
+                    value = match.postId;
+                    break;
+                case BOARD:
+                    value = match.board;
+                    break;
+                case SEARCH:
+                    value = new SearchLink(match.board, match.text);
+                    break;
+                default:
+                    value = match.text;
+                    break;
             }
         }
 
@@ -483,6 +511,69 @@ public class CommentParser {
         return link;
     }
 
+    /**
+     * Match an href against the patterns of this parser, cheapest checks first. Anything that depends on the post the
+     * href is in is left to {@link #matchAnchor(Post.Builder, CharSequence, Element, PostParser.Callback)}.
+     */
+    private HrefMatch matchHref(String href) {
+        //gets us something like /board/ or /thread/postno#quoteno
+        if (href.startsWith(CHAN4_BOARDS_PREFIX) && CHAN4_THREAD_LINK_PATTERN.matcher(href).matches()) {
+            href = href.substring(2);
+            href = href.substring(href.indexOf('/'));
+        }
+
+        if (!fullQuoteNeedsSlash || href.startsWith("/")) {
+            Matcher externalMatcher = fullQuotePattern.matcher(href);
+            if (externalMatcher.matches()) {
+                String postNo = externalMatcher.group(3);
+                //whether this is a quote within the thread depends on the post, so there's no type yet
+                return new HrefMatch(null,
+                        externalMatcher.group(1),
+                        Integer.parseInt(externalMatcher.group(2)),
+                        postNo == null ? -1 : Integer.parseInt(postNo),
+                        href
+                );
+            }
+        }
+
+        Matcher quoteMatcher = quotePattern.matcher(href);
+        if (quoteMatcher.matches()) {
+            //link to post in the same thread with post number (>>post); usually this is a #num href
+            return new HrefMatch(Type.QUOTE, null, -1, Integer.parseInt(quoteMatcher.group(1)), href);
+        }
+
+        //board links end in a slash or catalog, 8chan-style ones in index.html
+        if (href.endsWith("/") || href.endsWith("/catalog")) {
+            Matcher boardLinkMatcher = boardLinkPattern.matcher(href);
+            if (boardLinkMatcher.matches()) {
+                return new HrefMatch(Type.BOARD, boardLinkMatcher.group(1), -1, -1, href);
+            }
+        }
+        if (href.endsWith("/index.html")) {
+            Matcher boardLinkMatcher8Chan = boardLinkPattern8Chan.matcher(href);
+            if (boardLinkMatcher8Chan.matches()) {
+                return new HrefMatch(Type.BOARD, boardLinkMatcher8Chan.group(1), -1, -1, href);
+            }
+        }
+
+        if (href.startsWith(CHAN4_BOARDS_PREFIX)) {
+            Matcher boardSearchMatcher = boardSearchPattern.matcher(href);
+            if (boardSearchMatcher.matches()) {
+                //search link
+                String search;
+                try {
+                    search = URLDecoder.decode(boardSearchMatcher.group(2), "US-ASCII");
+                } catch (UnsupportedEncodingException e) {
+                    search = boardSearchMatcher.group(2);
+                }
+                return new HrefMatch(Type.SEARCH, boardSearchMatcher.group(1), -1, -1, search);
+            }
+        }
+
+        //this link would run javascript on the source webpage, open this in a webview; otherwise it's a normal link
+        return new HrefMatch(href.startsWith("javascript:") ? Type.JAVASCRIPT : Type.LINK, null, -1, -1, href);
+    }
+
     public SpannableString span(CharSequence text, Object... additionalSpans) {
         SpannableString result = new SpannableString(text);
         int l = result.length();
@@ -503,6 +594,26 @@ public class CommentParser {
         return result;
     }
 
+    // what an href matched, without anything that depends on the post it's in
+    private static class HrefMatch {
+        // null for a full quote, which is only a quote if the post is in the same thread
+        @Nullable
+        private final Type type;
+        private final String board;
+        private final int threadId;
+        private final int postId;
+        // the search for a search link, the (rewritten) href otherwise
+        private final String text;
+
+        private HrefMatch(@Nullable Type type, String board, int threadId, int postId, String text) {
+            this.type = type;
+            this.board = board;
+            this.threadId = threadId;
+            this.postId = postId;
+            this.text = text;
+        }
+    }
+
     public static class Link {
         public Type type;
         public CharSequence key;
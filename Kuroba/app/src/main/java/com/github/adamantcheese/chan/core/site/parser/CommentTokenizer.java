@@ -0,0 +1,243 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.parser;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A forward-only tokenizer for the small subset of HTML that imageboards put into comments: text, start tags with
+ * attributes, and end tags. Entities are unescaped as text and attributes are read.<br>
+ * Anything outside of that, like HTML comments, doctypes or unterminated tags, throws an
+ * {@link UnsupportedMarkupException} so the caller can fall back to a real HTML parser.
+ */
+public class CommentTokenizer {
+    public enum Token {
+        TEXT,
+        START_TAG,
+        END_TAG
+    }
+
+    private final String html;
+    private int pos;
+    private int tokenStart;
+
+    private Token token;
+    private String text;
+    private String tagName;
+    // name, value pairs in document order
+    private final List<String> attributes = new ArrayList<>();
+    private boolean selfClosing;
+
+    public CommentTokenizer(String html) {
+        this.html = html;
+    }
+
+    /**
+     * Move to the next token.
+     *
+     * @return false if the end of the input was reached
+     */
+    public boolean next()
+            throws UnsupportedMarkupException {
+        if (pos >= html.length()) return false;
+        tokenStart = pos;
+
+        // a < that doesn't start a tag is just text, same as a browser would treat it
+        int textEnd = pos;
+        while ((textEnd = html.indexOf('<', textEnd)) != -1 && !isTagStart(textEnd)) {
+            textEnd++;
+        }
+        if (textEnd == -1) textEnd = html.length();
+
+        if (textEnd > pos) {
+            String raw = html.substring(pos, textEnd);
+            token = Token.TEXT;
+            text = raw.indexOf('&') == -1 ? raw : Parser.unescapeEntities(raw, false);
+            pos = textEnd;
+        } else {
+            readTag();
+        }
+        return true;
+    }
+
+    public Token getToken() {
+        return token;
+    }
+
+    /**
+     * @return the unescaped text of a TEXT token
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the lowercase tag name of a START_TAG or END_TAG token
+     */
+    public String getTagName() {
+        return tagName;
+    }
+
+    /**
+     * @return true if a START_TAG token was written as &lt;tag/&gt;
+     */
+    public boolean isSelfClosing() {
+        return selfClosing;
+    }
+
+    /**
+     * @return a detached element with the tag name and attributes of the current START_TAG token; it has no parent,
+     * siblings or children
+     */
+    public Element createElement() {
+        Element element = new Element(tagName);
+        for (int i = 0; i < attributes.size(); i += 2) {
+            // the first occurrence of an attribute wins, same as for Jsoup
+            if (!element.hasAttr(attributes.get(i))) {
+                element.attr(attributes.get(i), attributes.get(i + 1));
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Skip over the element started by the current START_TAG token, including everything nested in it.
+     *
+     * @return the raw HTML of the element, from its start tag to its end tag
+     */
+    public String readRawElement()
+            throws UnsupportedMarkupException {
+        int elementStart = tokenStart;
+        String name = tagName;
+        int depth = 1;
+        while (depth > 0) {
+            if (!next()) throw new UnsupportedMarkupException("Unclosed " + name);
+            if (token == Token.START_TAG && !selfClosing && name.equals(tagName)) {
+                depth++;
+            } else if (token == Token.END_TAG && name.equals(tagName)) {
+                depth--;
+            }
+        }
+        return html.substring(elementStart, pos);
+    }
+
+    private boolean isTagStart(int index) {
+        if (index + 1 >= html.length()) return false;
+        char c = html.charAt(index + 1);
+        if (isLetter(c) || c == '!' || c == '?') return true;
+        return c == '/' && index + 2 < html.length() && isLetter(html.charAt(index + 2));
+    }
+
+    private void readTag()
+            throws UnsupportedMarkupException {
+        int i = pos + 1;
+        boolean endTag = html.charAt(i) == '/';
+        if (endTag) i++;
+        if (!isLetter(html.charAt(i))) {
+            throw new UnsupportedMarkupException("Unsupported markup at " + pos);
+        }
+
+        int nameStart = i;
+        while (i < html.length() && !isNameEnd(html.charAt(i))) {
+            i++;
+        }
+        tagName = html.substring(nameStart, i).toLowerCase(Locale.ENGLISH);
+        attributes.clear();
+        selfClosing = false;
+
+        while (true) {
+            i = skipWhitespace(i);
+            if (i >= html.length()) throw new UnsupportedMarkupException("Unterminated tag " + tagName);
+            char c = html.charAt(i);
+            if (c == '>') {
+                i++;
+                break;
+            }
+            if (c == '/') {
+                if (i + 1 < html.length() && html.charAt(i + 1) == '>') {
+                    selfClosing = true;
+                    i += 2;
+                    break;
+                }
+                i++;
+                continue;
+            }
+
+            int attributeStart = i;
+            while (i < html.length() && !isNameEnd(html.charAt(i)) && html.charAt(i) != '=') {
+                i++;
+            }
+            String name = html.substring(attributeStart, i).toLowerCase(Locale.ENGLISH);
+            String value = "";
+            i = skipWhitespace(i);
+            if (i < html.length() && html.charAt(i) == '=') {
+                i = skipWhitespace(i + 1);
+                if (i >= html.length()) throw new UnsupportedMarkupException("Unterminated tag " + tagName);
+                char quote = html.charAt(i);
+                if (quote == '"' || quote == '\'') {
+                    int valueEnd = html.indexOf(quote, i + 1);
+                    if (valueEnd == -1) throw new UnsupportedMarkupException("Unterminated attribute " + name);
+                    value = html.substring(i + 1, valueEnd);
+                    i = valueEnd + 1;
+                } else {
+                    int valueStart = i;
+                    while (i < html.length() && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+                        i++;
+                    }
+                    value = html.substring(valueStart, i);
+                }
+                if (value.indexOf('&') != -1) {
+                    value = Parser.unescapeEntities(value, true);
+                }
+            }
+            if (!name.isEmpty()) {
+                attributes.add(name);
+                attributes.add(value);
+            }
+        }
+
+        token = endTag ? Token.END_TAG : Token.START_TAG;
+        pos = i;
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < html.length() && Character.isWhitespace(html.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNameEnd(char c) {
+        return Character.isWhitespace(c) || c == '/' || c == '>';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    public static class UnsupportedMarkupException
+            extends Exception {
+        public UnsupportedMarkupException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where the time goes when posts are parsed, since the app was started, for the developer settings. Only posts that
+ * go through the post parser are counted, not posts that were reused as they were.<br>
+ * The most recent loads are kept as well, to see how long parsing holds up a load once its response is read, for
+ * threads of different sizes.
+ */
+public class ParseTimings {
+    private static final int MAX_LOADS = 128;
+    // loads are grouped by the amount of posts in them, up to these sizes
+    private static final int[] LOAD_SIZES = {150, 1000, Integer.MAX_VALUE};
+
+    private final AtomicLong parsedPosts = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong restoredPosts = new AtomicLong();
+    private final AtomicLong restoreNanos = new AtomicLong();
+
+    private final Load[] loads = new Load[MAX_LOADS];
+    private int nextLoad;
+    private int loadCount;
+
+    /**
+     * A post was parsed from scratch, which took the given time.
+     */
+    void addParsed(long nanos) {
+        parsedPosts.incrementAndGet();
+        parseNanos.addAndGet(nanos);
+    }
+
+    /**
+     * A post's comment was restored from the {@link ParsedPostCache}, and the rest of the post parsed in the given time.
+     */
+    void addRestored(long nanos) {
+        restoredPosts.incrementAndGet();
+        restoreNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @param posts       the amount of posts in the response
+     * @param parsed      the amount of those that were parsed, instead of reused
+     * @param chunks      the amount of chunks the posts to parse were split in
+     * @param totalNanos  the time to read and parse the whole response
+     * @param finishNanos the time spent waiting for parsing after the response was read
+     */
+    synchronized void addLoad(int posts, int parsed, int chunks, long totalNanos, long finishNanos) {
+        loads[nextLoad] = new Load(posts, parsed, chunks, totalNanos, finishNanos);
+        nextLoad = (nextLoad + 1) % MAX_LOADS;
+        loadCount = Math.min(loadCount + 1, MAX_LOADS);
+    }
+
+    public synchronized void clear() {
+        parsedPosts.set(0);
+        parseNanos.set(0);
+        restoredPosts.set(0);
+        restoreNanos.set(0);
+        Arrays.fill(loads, null);
+        nextLoad = 0;
+        loadCount = 0;
+    }
+
+    /**
+     * @return the average time per post for posts parsed from scratch and posts restored from the cache, for debugging
+     */
+    public synchronized String getSummary() {
+        long parsed = parsedPosts.get();
+        long restored = restoredPosts.get();
+        if (parsed + restored == 0) return "No posts parsed";
+        StringBuilder summary = new StringBuilder(String.format(Locale.ENGLISH,
+                "Parsed %d posts, %s each\nRestored %d posts from the cache (%d%%), %s each",
+                parsed,
+                average(parseNanos.get(), parsed),
+                restored,
+                restored * 100 / (parsed + restored),
+                average(restoreNanos.get(), restored)
+        ));
+
+        int minSize = 0;
+        for (int maxSize : LOAD_SIZES) {
+            List<Long> total = new ArrayList<>();
+            List<Long> finish = new ArrayList<>();
+            long parsedInChunks = 0;
+            long chunks = 0;
+            for (int i = 0; i < loadCount; i++) {
+                Load load = loads[i];
+                if (load.posts <= minSize || load.posts > maxSize) continue;
+                total.add(load.totalNanos);
+                finish.add(load.finishNanos);
+                parsedInChunks += load.parsed;
+                chunks += load.chunks;
+            }
+            if (!total.isEmpty()) {
+                summary.append(String.format(Locale.ENGLISH,
+                        "\n%s posts (%d loads, %d posts per chunk)\n  total p50 %dms, waiting for parsing p50 %dms",
+                        maxSize == Integer.MAX_VALUE ? "Over " + minSize : "Up to " + maxSize,
+                        total.size(),
+                        chunks == 0 ? 0 : parsedInChunks / chunks,
+                        median(total) / 1000000L,
+                        median(finish) / 1000000L
+                ));
+            }
+            minSize = maxSize;
+        }
+        return summary.toString();
+    }
+
+    private static long median(List<Long> values) {
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+
+    private static String average(long nanos, long count) {
+        return count == 0 ? "-" : String.format(Locale.ENGLISH, "%.1f us", nanos / 1000.0 / count);
+    }
+
+    private static class Load {
+        private final int posts;
+        private final int parsed;
+        private final int chunks;
+        private final long totalNanos;
+        private final long finishNanos;
+
+        private Load(int posts, int parsed, int chunks, long totalNanos, long finishNanos) {
+            this.posts = posts;
+            this.parsed = parsed;
+            this.chunks = chunks;
+            this.totalNanos = totalNanos;
+            this.finishNanos = finishNanos;
+        }
+    }
+}
@@ -0,0 +1,529 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.parser;
+
+import android.content.res.Resources;
+import android.text.SpannableStringBuilder;
+import android.text.style.StrikethroughSpan;
+import android.text.style.StyleSpan;
+import android.text.style.TypefaceSpan;
+import android.text.style.UnderlineSpan;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.BuildConfig;
+import com.github.adamantcheese.chan.core.manager.FilterMatcher;
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.PostLinkable;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.settings.ChanSettings;
+import com.github.adamantcheese.chan.core.site.parser.CommentParser.SearchLink;
+import com.github.adamantcheese.chan.core.site.parser.CommentParser.ThreadLink;
+import com.github.adamantcheese.chan.ui.text.AbsoluteSizeSpanHashed;
+import com.github.adamantcheese.chan.ui.text.BackgroundColorSpanHashed;
+import com.github.adamantcheese.chan.ui.text.CodeBackgroundSpan;
+import com.github.adamantcheese.chan.ui.text.ForegroundColorSpanHashed;
+import com.github.adamantcheese.chan.ui.text.RelativeSizeSpanHashed;
+import com.github.adamantcheese.chan.ui.text.ThemeColorSpan;
+import com.github.adamantcheese.chan.ui.theme.Theme;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.gson;
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getRes;
+
+/**
+ * An on-disk cache of parsed comments, so that reopening a thread that has fallen out of memory doesn't need to parse
+ * every post from scratch again. Comments are stored as their text plus the runs of spans over it.<br>
+ * There is one file per loadable, keyed by site, board and number, with entries per post number. An entry is only
+ * used if the raw comment hashes the same and the parser configuration (app version, parser and relevant settings)
+ * is the same as when it was stored; it also remembers the answers the parser got about saved and in-thread posts, and
+ * is reparsed if any of those changed. Comments with spans that can't be stored are simply not cached.<br>
+ * A file is the fingerprint of the parser configuration on the first line, followed by one entry per line; newly
+ * parsed comments are appended, and later lines replace earlier ones for the same post. Once most of the lines are
+ * replaced ones, the file is written again from scratch.<br>
+ * Files are evicted least recently used first once they go over the size budget, checked every few writes.
+ */
+public class ParsedPostCache {
+    private static final int FORMAT_VERSION = 4;
+    private static final int TRIM_INTERVAL = 20;
+
+    private final File cacheDir;
+    private final long maxBytes;
+    private int writesSinceTrim = TRIM_INTERVAL; // trim on the first write
+
+    public ParsedPostCache(File cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Read the cached comments for a loadable. This does disk IO, so don't call it on the main thread.<br>
+     * The returned cache is meant to be kept for as long as the loadable is loaded, so the file is only read once;
+     * check {@link ThreadCache#isCurrent(PostParser)} before reusing it.
+     */
+    public ThreadCache open(Loadable loadable, PostParser parser) {
+        String fingerprint = fingerprint(parser);
+        String name = (loadable.siteId + "_" + loadable.boardCode + "_" + loadable.no).replaceAll("\\W", "_");
+        File file = new File(cacheDir, name + ".jsonl");
+
+        Map<Integer, CachedComment> comments = new ConcurrentHashMap<>();
+        int lines = 0;
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                if (fingerprint.equals(reader.readLine())) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        CacheEntry entry = gson.fromJson(line, CacheEntry.class);
+                        if (entry != null && entry.comment != null) {
+                            comments.put(entry.no, entry.comment);
+                            lines++;
+                        }
+                    }
+                }
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(System.currentTimeMillis());
+            } catch (Exception e) {
+                comments.clear();
+                lines = 0;
+                //noinspection ResultOfMethodCallIgnored
+                file.delete(); // bad file probably
+            }
+        }
+        return new ThreadCache(file, fingerprint, comments, lines);
+    }
+
+    private String fingerprint(PostParser parser) {
+        // theme colors are looked up when spans are drawn, so the theme doesn't matter here
+        return FORMAT_VERSION + "|" + BuildConfig.VERSION_CODE + "|" + parser.getClass().getName() + "|"
+                + ChanSettings.fontSize.get() + "|" + ChanSettings.enableEmoji.get() + "|"
+                + ChanSettings.parseExtraQuotes.get() + "|" + ChanSettings.parseExtraSpoilers.get() + "|"
+                + ChanSettings.mildMarkdown.get();
+    }
+
+    public synchronized void clear() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private synchronized void write(ThreadCache threadCache) {
+        Map<Integer, CachedComment> unsaved = new HashMap<>(threadCache.unsaved);
+        if (unsaved.isEmpty()) return;
+        for (Map.Entry<Integer, CachedComment> entry : unsaved.entrySet()) {
+            threadCache.unsaved.remove(entry.getKey(), entry.getValue());
+        }
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) return;
+
+        // the file may have been evicted meanwhile, in which case everything is written again
+        boolean rewrite = threadCache.lines == 0 || !threadCache.file.exists()
+                || threadCache.lines + unsaved.size() > 2 * threadCache.comments.size();
+        Map<Integer, CachedComment> toWrite = rewrite ? new HashMap<>(threadCache.comments) : unsaved;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(threadCache.file, !rewrite))) {
+            if (rewrite) {
+                writer.write(threadCache.fingerprint);
+                writer.newLine();
+            }
+            for (Map.Entry<Integer, CachedComment> entry : toWrite.entrySet()) {
+                CacheEntry cacheEntry = new CacheEntry();
+                cacheEntry.no = entry.getKey();
+                cacheEntry.comment = entry.getValue();
+                writer.write(gson.toJson(cacheEntry));
+                writer.newLine();
+            }
+            threadCache.lines = rewrite ? toWrite.size() : threadCache.lines + toWrite.size();
+        } catch (Exception e) {
+            Logger.w(this, "Failed to write parsed post cache", e);
+            //noinspection ResultOfMethodCallIgnored
+            threadCache.file.delete();
+            threadCache.lines = 0;
+            return;
+        }
+
+        if (++writesSinceTrim >= TRIM_INTERVAL) {
+            writesSinceTrim = 0;
+            trim();
+        }
+    }
+
+    // evicts the least recently used files until everything fits in the budget
+    private void trim() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= maxBytes) break;
+            total -= file.length();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * The cached comments for a single loadable. Safe to use from multiple threads at once.
+     */
+    public class ThreadCache {
+        private final File file;
+        private final String fingerprint;
+        private final Map<Integer, CachedComment> comments;
+        // comments parsed since the last save
+        private final Map<Integer, CachedComment> unsaved = new ConcurrentHashMap<>();
+        // the amount of entries in the file; only accessed while writing
+        private int lines;
+
+        private ThreadCache(File file, String fingerprint, Map<Integer, CachedComment> comments, int lines) {
+            this.file = file;
+            this.fingerprint = fingerprint;
+            this.comments = comments;
+            this.lines = lines;
+        }
+
+        /**
+         * @return if this cache is for the current parser configuration; if not, open the cache again
+         */
+        public boolean isCurrent(PostParser parser) {
+            return fingerprint.equals(fingerprint(parser));
+        }
+
+        /**
+         * Parse a post with the given parser, restoring its comment from the cache if possible. Otherwise the comment
+         * is parsed as usual, and stored if it can be.
+         */
+        public Post parse(
+                PostParser parser,
+                @NonNull Theme theme,
+                Post.Builder builder,
+                FilterMatcher filters,
+                PostParser.Callback callback
+        ) {
+            long start = System.nanoTime();
+            String raw = builder.comment.toString();
+            long hash = hash(raw);
+
+            CachedComment cached = comments.get(builder.no);
+            if (cached != null && cached.matches(hash, builder, callback)) {
+                SpannableStringBuilder comment = cached.restore();
+                if (comment != null) {
+                    // parsing the comment would've added these
+                    for (PostLinkable linkable : comment.getSpans(0, comment.length(), PostLinkable.class)) {
+                        if (linkable.type == PostLinkable.Type.QUOTE) {
+                            builder.repliesTo(Collections.singleton((int) linkable.value));
+                        }
+                    }
+                    builder.parsedComment(comment);
+                    Post post = parser.parse(theme, builder, filters, callback);
+                    ChanReaderParser.parseTimings.addRestored(System.nanoTime() - start);
+                    return post;
+                }
+            }
+
+            RecordingCallback recordingCallback = new RecordingCallback(callback);
+            int imageCount = builder.images.size();
+            Post post = parser.parse(theme, builder, filters, recordingCallback);
+
+            // images taken out of the comment can't be restored without parsing it again
+            if (post.images.size() == imageCount) {
+                CachedComment parsed = CachedComment.from(hash, builder.isSavedReply, recordingCallback, post.comment);
+                if (parsed != null) {
+                    comments.put(builder.no, parsed);
+                    unsaved.put(builder.no, parsed);
+                }
+            }
+            ChanReaderParser.parseTimings.addParsed(System.nanoTime() - start);
+            return post;
+        }
+
+        /**
+         * Append any newly parsed comments to disk. This does disk IO, so don't call it on the main thread.
+         */
+        public void save() {
+            if (unsaved.isEmpty()) return;
+            write(this);
+        }
+    }
+
+    // 64-bit FNV-1a
+    private static long hash(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Remembers what the parser asked about other posts, as the parsed comment depends on the answers.
+     */
+    private static class RecordingCallback
+            implements PostParser.Callback {
+        private final PostParser.Callback callback;
+        private final Map<Integer, Boolean> saved = new HashMap<>();
+        private final Map<Integer, Boolean> internal = new HashMap<>();
+
+        private RecordingCallback(PostParser.Callback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean isSaved(int postNo) {
+            boolean result = callback.isSaved(postNo);
+            saved.put(postNo, result);
+            return result;
+        }
+
+        @Override
+        public boolean isInternal(int postNo) {
+            boolean result = callback.isInternal(postNo);
+            internal.put(postNo, result);
+            return result;
+        }
+
+        @Override
+        public boolean isRemoved(int postNo) {
+            // removed posts are handled after the comment is parsed, on the restored comment as well
+            return callback.isRemoved(postNo);
+        }
+    }
+
+    private static class CacheEntry {
+        int no;
+        CachedComment comment;
+    }
+
+    private static class CachedComment {
+        long hash;
+        boolean savedReply;
+        Map<Integer, Boolean> saved;
+        Map<Integer, Boolean> internal;
+        String text;
+        List<SpanRun> spans;
+
+        private boolean matches(long hash, Post.Builder builder, PostParser.Callback callback) {
+            if (this.hash != hash || savedReply != builder.isSavedReply) return false;
+            for (Map.Entry<Integer, Boolean> entry : saved.entrySet()) {
+                if (callback.isSaved(entry.getKey()) != entry.getValue()) return false;
+            }
+            for (Map.Entry<Integer, Boolean> entry : internal.entrySet()) {
+                if (callback.isInternal(entry.getKey()) != entry.getValue()) return false;
+            }
+            return true;
+        }
+
+        @Nullable
+        private static CachedComment from(
+                long hash, boolean savedReply, RecordingCallback callback, SpannableStringBuilder comment
+        ) {
+            List<SpanRun> spans = new ArrayList<>();
+            for (Object span : comment.getSpans(0, comment.length(), Object.class)) {
+                SpanRun run = SpanRun.from(span);
+                if (run == null) return null;
+                run.start = comment.getSpanStart(span);
+                run.end = comment.getSpanEnd(span);
+                run.flags = comment.getSpanFlags(span);
+                spans.add(run);
+            }
+
+            CachedComment cached = new CachedComment();
+            cached.hash = hash;
+            cached.savedReply = savedReply;
+            cached.saved = callback.saved;
+            cached.internal = callback.internal;
+            cached.text = comment.toString();
+            cached.spans = spans;
+            return cached;
+        }
+
+        @Nullable
+        private SpannableStringBuilder restore() {
+            SpannableStringBuilder comment = new SpannableStringBuilder(text);
+            for (SpanRun run : spans) {
+                Object span = run.create(comment);
+                if (span == null) return null;
+                comment.setSpan(span, run.start, run.end, run.flags);
+            }
+            return comment;
+        }
+    }
+
+    private static class SpanRun {
+        private static final String FOREGROUND = "fg";
+        private static final String BACKGROUND = "bg";
+        private static final String THEME_COLOR = "themecolor";
+        private static final String STRIKETHROUGH = "strike";
+        private static final String UNDERLINE = "underline";
+        private static final String STYLE = "style";
+        private static final String TYPEFACE = "typeface";
+        private static final String CODE = "code";
+        private static final String RELATIVE_SIZE = "relsize";
+        private static final String ABSOLUTE_SIZE = "abssize";
+        private static final String LINKABLE = "linkable";
+
+        String kind;
+        int start;
+        int end;
+        int flags;
+        int intValue;
+        float floatValue;
+        boolean booleanValue;
+        String stringValue;
+        PostLinkable.Type linkableType;
+        ThreadLink threadLink;
+        SearchLink searchLink;
+
+        @Nullable
+        private static SpanRun from(Object span) {
+            SpanRun run = new SpanRun();
+            Class<?> spanClass = span.getClass();
+            if (spanClass == ForegroundColorSpanHashed.class) {
+                run.kind = FOREGROUND;
+                run.intValue = ((ForegroundColorSpanHashed) span).getForegroundColor();
+            } else if (spanClass == BackgroundColorSpanHashed.class) {
+                run.kind = BACKGROUND;
+                run.intValue = ((BackgroundColorSpanHashed) span).getBackgroundColor();
+            } else if (spanClass == ThemeColorSpan.class) {
+                run.kind = THEME_COLOR;
+                // attribute ids aren't stable between builds, so the attribute is stored by its resource name
+                try {
+                    run.stringValue = getRes().getResourceName(((ThemeColorSpan) span).colorAttr);
+                } catch (Resources.NotFoundException e) {
+                    return null;
+                }
+                run.booleanValue = ((ThemeColorSpan) span).background;
+            } else if (spanClass == StrikethroughSpan.class) {
+                run.kind = STRIKETHROUGH;
+            } else if (spanClass == UnderlineSpan.class) {
+                run.kind = UNDERLINE;
+            } else if (spanClass == StyleSpan.class) {
+                run.kind = STYLE;
+                run.intValue = ((StyleSpan) span).getStyle();
+            } else if (spanClass == TypefaceSpan.class) {
+                run.kind = TYPEFACE;
+                run.stringValue = ((TypefaceSpan) span).getFamily();
+            } else if (spanClass == CodeBackgroundSpan.class) {
+                run.kind = CODE;
+            } else if (spanClass == RelativeSizeSpanHashed.class) {
+                run.kind = RELATIVE_SIZE;
+                run.floatValue = ((RelativeSizeSpanHashed) span).getSizeChange();
+            } else if (spanClass == AbsoluteSizeSpanHashed.class && !((AbsoluteSizeSpanHashed) span).getDip()) {
+                run.kind = ABSOLUTE_SIZE;
+                run.intValue = ((AbsoluteSizeSpanHashed) span).getSize();
+            } else if (spanClass == PostLinkable.class) {
+                // subclasses of PostLinkable have their own behavior, which can't be stored
+                PostLinkable linkable = (PostLinkable) span;
+                run.kind = LINKABLE;
+                run.linkableType = linkable.type;
+                switch (linkable.type) {
+                    case QUOTE:
+                        run.intValue = (int) linkable.value;
+                        break;
+                    case LINK:
+                    case EMBED_AUTO_LINK:
+                    case EMBED_REPLACE_LINK:
+                    case BOARD:
+                    case JAVASCRIPT:
+                        run.stringValue = (String) linkable.value;
+                        break;
+                    case SPOILER:
+                        // the value is the spoilered text, which is restored from the comment
+                        break;
+                    case THREAD:
+                    case ARCHIVE:
+                        if (!(linkable.value instanceof ThreadLink)) return null;
+                        run.threadLink = (ThreadLink) linkable.value;
+                        break;
+                    case SEARCH:
+                        run.searchLink = (SearchLink) linkable.value;
+                        break;
+                    default:
+                        return null;
+                }
+            } else {
+                return null;
+            }
+            return run;
+        }
+
+        @Nullable
+        private Object create(SpannableStringBuilder comment) {
+            if (kind == null) return null;
+            switch (kind) {
+                case FOREGROUND:
+                    return new ForegroundColorSpanHashed(intValue);
+                case BACKGROUND:
+                    return new BackgroundColorSpanHashed(intValue);
+                case THEME_COLOR:
+                    if (stringValue == null) return null;
+                    int colorAttr = getRes().getIdentifier(stringValue, null, null);
+                    return colorAttr == 0 ? null : new ThemeColorSpan(colorAttr, booleanValue);
+                case STRIKETHROUGH:
+                    return new StrikethroughSpan();
+                case UNDERLINE:
+                    return new UnderlineSpan();
+                case STYLE:
+                    return new StyleSpan(intValue);
+                case TYPEFACE:
+                    return new TypefaceSpan(stringValue);
+                case CODE:
+                    return new CodeBackgroundSpan();
+                case RELATIVE_SIZE:
+                    return new RelativeSizeSpanHashed(floatValue);
+                case ABSOLUTE_SIZE:
+                    return new AbsoluteSizeSpanHashed(intValue);
+                case LINKABLE:
+                    if (linkableType == null) return null;
+                    switch (linkableType) {
+                        case QUOTE:
+                            return new PostLinkable(intValue, linkableType);
+                        case SPOILER:
+                            return new PostLinkable(comment.subSequence(start, end), linkableType);
+                        case THREAD:
+                        case ARCHIVE:
+                            return new PostLinkable(threadLink, linkableType);
+                        case SEARCH:
+                            return new PostLinkable(searchLink, linkableType);
+                        default:
+                            return new PostLinkable(stringValue, linkableType);
+                    }
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.parser;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
+import com.github.adamantcheese.chan.core.manager.FilterMatcher;
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.ui.theme.Theme;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.github.adamantcheese.chan.utils.BackgroundUtils.parsingPool;
+
+/**
+ * Parses posts on the parsing pool while the rest of the response is still being read, in chunks of posts as they
+ * come in from the reader.<br>
+ * Which posts are in the thread or removed isn't known until the whole response is read, so the parser's questions
+ * about that are answered with what is known so far, and remembered. Once reading is done, any post that got an answer
+ * that turned out to be wrong (like a quote of a post further down in the response) is parsed again.<br>
+ * Posts are parsed from a copy of their builder, so the builder read from the response stays untouched for that.
+ * Everything except the parsing itself must be called from the thread reading the response.
+ */
+class PostParsePipeline {
+    private static final int CHUNK_SIZE = 16;
+
+    private final Loadable loadable;
+    private final FilterMatcher filters;
+    private final DatabaseSavedReplyManager savedReplyManager;
+    private final ChanReader reader;
+    private final Theme theme;
+    private final ParsedPostCache parsedPostCache;
+
+    private final Set<Integer> knownNos = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final RemovedPostIndex knownRemovedPosts;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    private List<Post.Builder> pending = new ArrayList<>(CHUNK_SIZE);
+    private long finishNanos;
+    @Nullable
+    private ParsedPostCache.ThreadCache threadCache;
+
+    /**
+     * @param threadCache       the parsed comment cache of the loadable, if it is already open; otherwise it is opened
+     *                          from parsedPostCache when the first post needs parsing
+     * @param knownNos          post numbers known to be in the thread before reading starts
+     * @param knownRemovedPosts posts known to be removed before reading starts; this must not change afterwards
+     */
+    PostParsePipeline(
+            Loadable loadable,
+            FilterMatcher filters,
+            DatabaseSavedReplyManager savedReplyManager,
+            ChanReader reader,
+            @NonNull Theme theme,
+            ParsedPostCache parsedPostCache,
+            @Nullable ParsedPostCache.ThreadCache threadCache,
+            Collection<Integer> knownNos,
+            RemovedPostIndex knownRemovedPosts
+    ) {
+        this.loadable = loadable;
+        this.filters = filters;
+        this.savedReplyManager = savedReplyManager;
+        this.reader = reader;
+        this.theme = theme;
+        this.parsedPostCache = parsedPostCache;
+        this.threadCache = threadCache;
+        this.knownNos.addAll(knownNos);
+        this.knownRemovedPosts = knownRemovedPosts;
+    }
+
+    void onReuse(Post post) {
+        knownNos.add(post.no);
+    }
+
+    void onParse(Post.Builder builder) {
+        knownNos.add(builder.no);
+        pending.add(builder);
+        if (pending.size() >= CHUNK_SIZE) {
+            submitPending();
+        }
+    }
+
+    private void submitPending() {
+        if (pending.isEmpty()) return;
+        if (threadCache == null) {
+            threadCache = parsedPostCache.open(loadable, reader.getParser());
+        }
+
+        Chunk chunk = new Chunk(pending);
+        chunks.add(chunk);
+        parsingPool.execute(chunk.task);
+        pending = new ArrayList<>(CHUNK_SIZE);
+    }
+
+    /**
+     * Wait for all posts to be parsed, parsing any of them again if needed.
+     *
+     * @param internalNos  all post numbers in the thread
+     * @param removedPosts all removed posts
+     * @return the parsed posts, in the order they were read in
+     */
+    List<Post> finish(Set<Integer> internalNos, RemovedPostIndex removedPosts) {
+        long start = System.nanoTime();
+        submitPending();
+
+        List<Post> parsed = new ArrayList<>();
+        List<Post.Builder> toReparse = new ArrayList<>();
+        List<Integer> reparseIndexes = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            chunk.task.join();
+            for (int i = 0; i < chunk.builders.size(); i++) {
+                Post.Builder builder = chunk.builders.get(i);
+                PostParser.Callback callback =
+                        new PostParseTask.ThreadCallback(savedReplyManager, builder, internalNos, removedPosts);
+                if (chunk.callbacks[i].answersMatch(callback)) {
+                    parsed.add(chunk.results[i]);
+                } else {
+                    reparseIndexes.add(parsed.size());
+                    parsed.add(null);
+                    toReparse.add(builder);
+                }
+            }
+        }
+
+        if (!toReparse.isEmpty()) {
+            Post[] reparsed = new Post[toReparse.size()];
+            parsingPool.invoke(new PostParseTask(filters,
+                    toReparse,
+                    reader,
+                    theme,
+                    threadCache,
+                    (index, builder) -> new PostParseTask.ThreadCallback(savedReplyManager,
+                            builder,
+                            internalNos,
+                            removedPosts
+                    ),
+                    reparsed,
+                    PostParseTask.chunkSizeFor(toReparse.size(), parsingPool.getParallelism())
+            ));
+            for (int i = 0; i < reparsed.length; i++) {
+                parsed.set(reparseIndexes.get(i), reparsed[i]);
+            }
+        }
+
+        if (threadCache != null) {
+            threadCache.save();
+        }
+
+        List<Post> posts = new ArrayList<>(parsed.size());
+        for (Post post : parsed) {
+            if (post != null) {
+                posts.add(post);
+            }
+        }
+        finishNanos = System.nanoTime() - start;
+        return posts;
+    }
+
+    /**
+     * @return the amount of chunks the posts were parsed in, not counting posts that had to be parsed again
+     */
+    int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * @return how long {@link #finish(Set, RemovedPostIndex)} took, which is the time parsing held up reading
+     */
+    long getFinishNanos() {
+        return finishNanos;
+    }
+
+    /**
+     * Stop parsing; chunks that haven't started are dropped, running chunks stop after their current post.
+     */
+    void cancel() {
+        pending.clear();
+        for (Chunk chunk : chunks) {
+            chunk.task.cancel(false);
+        }
+    }
+
+    private class Chunk {
+        private final List<Post.Builder> builders;
+        private final SpeculativeCallback[] callbacks;
+        private final Post[] results;
+        private final PostParseTask task;
+
+        private Chunk(List<Post.Builder> builders) {
+            this.builders = builders;
+            callbacks = new SpeculativeCallback[builders.size()];
+            results = new Post[builders.size()];
+
+            List<Post.Builder> copies = new ArrayList<>(builders.size());
+            for (Post.Builder builder : builders) {
+                copies.add(builder.clone());
+            }
+            task = new PostParseTask(filters, copies, reader, theme, threadCache, (index, builder) -> {
+                callbacks[index] = new SpeculativeCallback(builder);
+                return callbacks[index];
+            }, results, copies.size());
+        }
+    }
+
+    /**
+     * Answers with what is known at the time of asking, and remembers the answers.
+     */
+    private class SpeculativeCallback
+            extends PostParseTask.ThreadCallback {
+        private final Map<Integer, Boolean> internal = new HashMap<>();
+        private final Map<Integer, Boolean> removed = new HashMap<>();
+
+        private SpeculativeCallback(Post.Builder postBuilder) {
+            super(savedReplyManager, postBuilder, knownNos, knownRemovedPosts);
+        }
+
+        @Override
+        public boolean isInternal(int postNo) {
+            boolean result = super.isInternal(postNo);
+            internal.put(postNo, result);
+            return result;
+        }
+
+        @Override
+        public boolean isRemoved(int postNo) {
+            boolean result = super.isRemoved(postNo);
+            removed.put(postNo, result);
+            return result;
+        }
+
+        private boolean answersMatch(PostParser.Callback callback) {
+            for (Map.Entry<Integer, Boolean> entry : internal.entrySet()) {
+                if (callback.isInternal(entry.getKey()) != entry.getValue()) return false;
+            }
+            for (Map.Entry<Integer, Boolean> entry : removed.entrySet()) {
+                if (callback.isRemoved(entry.getKey()) != entry.getValue()) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.parser;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
+import com.github.adamantcheese.chan.core.manager.FilterMatcher;
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.ui.theme.Theme;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses the post html and the filters on it for a range of post builders belonging to ChanReaderRequest.<br>
+ * The range is split in halves until it is no larger than the chunk size, so that idle threads of the
+ * {@link java.util.concurrent.ForkJoinPool} can steal the other halves. Each post is written into the results array
+ * at the same index as its builder, so no locking or reordering is needed afterwards.
+ */
+class PostParseTask
+        extends RecursiveAction {
+    // below this, splitting costs more than parsing the posts on the current thread
+    private static final int MIN_CHUNK_SIZE = 8;
+    // chunks per thread, so that threads that finish early have something left to steal
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final FilterMatcher filters;
+    private final List<Post.Builder> builders;
+    private final ChanReader reader;
+    private final Theme theme;
+    @Nullable
+    private final ParsedPostCache.ThreadCache parsedPostCache;
+    private final Callbacks callbacks;
+    private final Post[] results;
+    private final int chunkSize;
+
+    private final int start;
+    private final int end;
+
+    /**
+     * @param builders  the posts to parse
+     * @param callbacks supplies the parser callback for each post
+     * @param results   receives the parsed posts, must be the same size as builders
+     * @param chunkSize the largest range that is parsed without splitting it further
+     */
+    public PostParseTask(
+            FilterMatcher filters,
+            List<Post.Builder> builders,
+            ChanReader reader,
+            @NonNull Theme theme,
+            @Nullable ParsedPostCache.ThreadCache parsedPostCache,
+            Callbacks callbacks,
+            Post[] results,
+            int chunkSize
+    ) {
+        this.filters = filters;
+        this.builders = builders;
+        this.reader = reader;
+        this.theme = theme;
+        this.parsedPostCache = parsedPostCache;
+        this.callbacks = callbacks;
+        this.results = results;
+        this.chunkSize = chunkSize;
+        this.start = 0;
+        this.end = builders.size();
+    }
+
+    private PostParseTask(PostParseTask parent, int start, int end) {
+        this.filters = parent.filters;
+        this.builders = parent.builders;
+        this.reader = parent.reader;
+        this.theme = parent.theme;
+        this.parsedPostCache = parent.parsedPostCache;
+        this.callbacks = parent.callbacks;
+        this.results = parent.results;
+        this.chunkSize = parent.chunkSize;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return a chunk size that splits the given number of posts evenly over the threads of a pool
+     */
+    public static int chunkSizeFor(int postCount, int parallelism) {
+        return Math.max(MIN_CHUNK_SIZE, postCount / (Math.max(1, parallelism) * CHUNKS_PER_THREAD));
+    }
+
+    @Override
+    protected void compute() {
+        if (end - start > chunkSize) {
+            int middle = (start + end) >>> 1;
+            invokeAll(new PostParseTask(this, start, middle), new PostParseTask(this, middle, end));
+            return;
+        }
+
+        for (int i = start; i < end; i++) {
+            // a cancelled task keeps running until it returns, so stop early instead
+            if (isCancelled()) return;
+            results[i] = parse(i, builders.get(i));
+        }
+    }
+
+    private Post parse(int index, Post.Builder postBuilder) {
+        PostParser.Callback callback = callbacks.create(index, postBuilder);
+
+        // needed for "Apply to own posts" to work correctly
+        postBuilder.isSavedReply(callback.isSaved(postBuilder.no));
+
+        if (parsedPostCache != null) {
+            return parsedPostCache.parse(reader.getParser(), theme, postBuilder, filters, callback);
+        }
+        return reader.getParser().parse(theme, postBuilder, filters, callback);
+    }
+
+    interface Callbacks {
+        PostParser.Callback create(int index, Post.Builder builder);
+    }
+
+    /**
+     * Answers the parser's questions for a post of a thread, once everything in the thread is known.
+     */
+    static class ThreadCallback
+            implements PostParser.Callback {
+        private final DatabaseSavedReplyManager savedReplyManager;
+        private final Post.Builder postBuilder;
+        private final Set<Integer> internalNos;
+        private final RemovedPostIndex removedPosts;
+
+        ThreadCallback(
+                DatabaseSavedReplyManager savedReplyManager,
+                Post.Builder postBuilder,
+                Set<Integer> internalNos,
+                RemovedPostIndex removedPosts
+        ) {
+            this.savedReplyManager = savedReplyManager;
+            this.postBuilder = postBuilder;
+            this.internalNos = internalNos;
+            this.removedPosts = removedPosts;
+        }
+
+        @Override
+        public boolean isSaved(int postNo) {
+            return savedReplyManager.isSaved(postBuilder.board, postNo);
+        }
+
+        @Override
+        public boolean isInternal(int postNo) {
+            return internalNos.contains(postNo);
+        }
+
+        @Override
+        public boolean isRemoved(int postNo) {
+            return removedPosts.isRemoved(postNo);
+        }
+    }
+}
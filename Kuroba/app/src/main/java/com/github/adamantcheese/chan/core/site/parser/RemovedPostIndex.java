@@ -0,0 +1,149 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.parser;
+
+import com.github.adamantcheese.chan.core.model.orm.PostHide;
+
+/**
+ * The hidden and removed posts of a single board, by post number, with a set of flags per post.<br>
+ * This is an open addressing hash table over primitive arrays, so lookups don't allocate or box anything. It isn't
+ * synchronized; fill it in first, after that it can be read from any number of threads.
+ */
+public class RemovedPostIndex {
+    public static final int REMOVED = 1;
+    public static final int HIDDEN = 1 << 1;
+    public static final int WHOLE_THREAD = 1 << 2;
+    public static final int HIDE_REPLIES = 1 << 3;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final int siteId;
+    private final String boardCode;
+
+    private int[] nos;
+    // a slot is empty if its flags are 0; every added post has at least REMOVED or HIDDEN set
+    private byte[] flags;
+    private int size;
+
+    public RemovedPostIndex(int siteId, String boardCode) {
+        this.siteId = siteId;
+        this.boardCode = boardCode;
+        nos = new int[MIN_CAPACITY];
+        flags = new byte[MIN_CAPACITY];
+    }
+
+    public RemovedPostIndex(RemovedPostIndex other) {
+        siteId = other.siteId;
+        boardCode = other.boardCode;
+        nos = other.nos.clone();
+        flags = other.flags.clone();
+        size = other.size;
+    }
+
+    /**
+     * Add a post hide from the database; hides for other boards are ignored.
+     */
+    public void add(PostHide postHide) {
+        if (postHide.site != siteId || !boardCode.equals(postHide.board)) return;
+
+        int postFlags = postHide.hide ? HIDDEN : REMOVED;
+        if (postHide.wholeThread) postFlags |= WHOLE_THREAD;
+        if (postHide.hideRepliesToThisPost) postFlags |= HIDE_REPLIES;
+        add(postHide.no, postFlags);
+    }
+
+    /**
+     * Add flags for a post; these are combined with any flags the post already has.
+     *
+     * @param postFlags must include at least {@link #REMOVED} or {@link #HIDDEN}
+     */
+    public void add(int no, int postFlags) {
+        if ((postFlags & (REMOVED | HIDDEN)) == 0) {
+            throw new IllegalArgumentException("A post must be removed or hidden");
+        }
+
+        int slot = slotOf(no);
+        if (flags[slot] == 0) {
+            nos[slot] = no;
+            size++;
+        }
+        flags[slot] |= postFlags;
+
+        // keep the load factor at or below a half, so probe sequences stay short
+        if (size * 2 > nos.length) {
+            rehash(nos.length * 2);
+        }
+    }
+
+    /**
+     * @return the flags of a post, or 0 if it isn't hidden or removed
+     */
+    public int getFlags(int no) {
+        return flags[slotOf(no)];
+    }
+
+    public boolean isRemoved(int no) {
+        return (getFlags(no) & REMOVED) != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a hash of the posts and their flags, that doesn't depend on the order they were added in
+     */
+    public long contentHash() {
+        long hash = size;
+        for (int slot = 0; slot < nos.length; slot++) {
+            if (flags[slot] != 0) {
+                hash += (((long) mix(nos[slot]) << 8) | flags[slot]) * 0x9E3779B97F4A7C15L;
+            }
+        }
+        return hash;
+    }
+
+    // the slot that contains the post, or the empty slot it would go into
+    private int slotOf(int no) {
+        int mask = nos.length - 1;
+        int slot = mix(no) & mask;
+        while (flags[slot] != 0 && nos[slot] != no) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldNos = nos;
+        byte[] oldFlags = flags;
+        nos = new int[capacity];
+        flags = new byte[capacity];
+        for (int i = 0; i < oldNos.length; i++) {
+            if (oldFlags[i] != 0) {
+                int slot = slotOf(oldNos[i]);
+                nos[slot] = oldNos[i];
+                flags[slot] = oldFlags[i];
+            }
+        }
+    }
+
+    // post numbers are mostly sequential, so spread them over the table
+    private static int mix(int no) {
+        int h = no * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -19,6 +19,7 @@ package com.github.adamantcheese.chan.core.site.parser;
 import android.graphics.Color;
 import android.graphics.Typeface;
 import android.text.SpannableString;
+import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.style.StrikethroughSpan;
@@ -37,6 +38,7 @@ import com.github.adamantcheese.chan.ui.text.BackgroundColorSpanHashed;
 import com.github.adamantcheese.chan.ui.text.CodeBackgroundSpan;
 import com.github.adamantcheese.chan.ui.text.ForegroundColorSpanHashed;
 import com.github.adamantcheese.chan.ui.text.RelativeSizeSpanHashed;
+import com.github.adamantcheese.chan.ui.text.ThemeColorSpan;
 import com.github.adamantcheese.chan.ui.theme.Theme;
 import com.github.adamantcheese.chan.utils.StringUtils;
 
@@ -46,7 +48,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static com.github.adamantcheese.chan.utils.AndroidUtils.dp;
-import static com.github.adamantcheese.chan.utils.AndroidUtils.getAttrColor;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.sp;
 
 public class StyleRule {
@@ -212,22 +213,70 @@ public class StyleRule {
             result = action.execute(theme, callback, post, result, element);
         }
 
+        List<Pair<Object, Integer>> spansToApply = getSpans(result, element);
+        if (!spansToApply.isEmpty()) {
+            result = applySpan(result, spansToApply);
+        }
+
+        // Apply break if not the last element.
+        if (blockElement && element.nextSibling() != null) {
+            result = TextUtils.concat(result, "\n");
+        }
+
+        if (trimEndWhitespace) {
+            result = StringUtils.chomp(result);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return true if this rule only adds spans and maybe a line break to the text, so that it can be applied with
+     * {@link #applyInPlace(SpannableStringBuilder, int, Element)}
+     */
+    public boolean appliesInPlace() {
+        return !nullify && justText == null && actions.isEmpty() && !trimEndWhitespace;
+    }
+
+    /**
+     * The same as {@link #apply(Theme, PostParser.Callback, Post.Builder, CharSequence, Element)}, for the text from
+     * start to the end of the builder, but without copying that text. Only for rules that {@link #appliesInPlace()}.
+     */
+    public void applyInPlace(SpannableStringBuilder builder, int start, Element element) {
+        int end = builder.length();
+        if (end > start) {
+            List<Pair<Object, Integer>> spansToApply =
+                    getSpans(spoiler ? builder.subSequence(start, end) : null, element);
+            for (Pair<Object, Integer> span : spansToApply) {
+                builder.setSpan(span.first, start, end, spanFlags(span.second));
+            }
+        }
+
+        // Apply break if not the last element.
+        if (blockElement && element.nextSibling() != null) {
+            builder.append("\n");
+        }
+    }
+
+    /**
+     * @param text the styled text, only used by spoilers
+     */
+    private List<Pair<Object, Integer>> getSpans(CharSequence text, Element element) {
         List<Pair<Object, Integer>> spansToApply = new ArrayList<>(2);
 
         if (backgroundColor != 0) {
-            int color = backgroundColor;
-            if (backgroundColorRes) {
-                color = getAttrColor(theme.resValue, backgroundColor);
-            }
-            spansToApply.add(new Pair<>(new BackgroundColorSpanHashed(color), DEFAULT_RENDER_WEIGHT));
+            // theme colors are looked up when drawn, so the parsed text doesn't depend on the theme
+            Object span = backgroundColorRes
+                    ? new ThemeColorSpan(backgroundColor, true)
+                    : new BackgroundColorSpanHashed(backgroundColor);
+            spansToApply.add(new Pair<>(span, DEFAULT_RENDER_WEIGHT));
         }
 
         if (foregroundColor != 0) {
-            int color = foregroundColor;
-            if (foregroundColorRes) {
-                color = getAttrColor(theme.resValue, foregroundColor);
-            }
-            spansToApply.add(new Pair<>(new ForegroundColorSpanHashed(color), DEFAULT_RENDER_WEIGHT));
+            Object span = foregroundColorRes
+                    ? new ThemeColorSpan(foregroundColor)
+                    : new ForegroundColorSpanHashed(foregroundColor);
+            spansToApply.add(new Pair<>(span, DEFAULT_RENDER_WEIGHT));
         }
 
         if (strikeThrough) {
@@ -251,11 +300,11 @@ public class StyleRule {
         }
 
         if (code) {
-            spansToApply.add(new Pair<>(new CodeBackgroundSpan(theme), DEFAULT_RENDER_WEIGHT));
+            spansToApply.add(new Pair<>(new CodeBackgroundSpan(), DEFAULT_RENDER_WEIGHT));
         }
 
         if (spoiler) {
-            spansToApply.add(new Pair<>(new PostLinkable(theme, result, PostLinkable.Type.SPOILER),
+            spansToApply.add(new Pair<>(new PostLinkable(text, PostLinkable.Type.SPOILER),
                     DEFAULT_RENDER_WEIGHT
             ));
         }
@@ -286,20 +335,7 @@ public class StyleRule {
             }
         }
 
-        if (!spansToApply.isEmpty()) {
-            result = applySpan(result, spansToApply);
-        }
-
-        // Apply break if not the last element.
-        if (blockElement && element.nextSibling() != null) {
-            result = TextUtils.concat(result, "\n");
-        }
-
-        if (trimEndWhitespace) {
-            result = StringUtils.chomp(result);
-        }
-
-        return result;
+        return spansToApply;
     }
 
     private void applyCssStyles(String cssString, List<Pair<Object, Integer>> spansToApply) {
@@ -383,19 +419,18 @@ public class StyleRule {
         SpannableString result = new SpannableString(text);
         for (Pair<Object, Integer> span : spans) {
             if (span != null) {
-                //priority is 0 by default which is maximum above all else; higher priority is like higher layers, i.e. 2 is above 1, 3 is above 2, etc.
-                //we use 1000 here for to go above everything else
-                result.setSpan(span.first,
-                        0,
-                        result.length(),
-                        (span.second << Spanned.SPAN_PRIORITY_SHIFT) & Spanned.SPAN_PRIORITY
-                                | Spanned.SPAN_INCLUSIVE_EXCLUSIVE
-                );
+                result.setSpan(span.first, 0, result.length(), spanFlags(span.second));
             }
         }
         return result;
     }
 
+    private static int spanFlags(int renderWeight) {
+        //priority is 0 by default which is maximum above all else; higher priority is like higher layers, i.e. 2 is above 1, 3 is above 2, etc.
+        //we use 1000 here for to go above everything else
+        return (renderWeight << Spanned.SPAN_PRIORITY_SHIFT) & Spanned.SPAN_PRIORITY | Spanned.SPAN_INCLUSIVE_EXCLUSIVE;
+    }
+
     public interface Action {
         CharSequence execute(
                 @NonNull Theme theme,
@@ -182,6 +182,15 @@ public class Chan4
                     .build();
         }
 
+        @Override
+        public HttpUrl threadTail(Loadable loadable) {
+            return a.newBuilder()
+                    .addPathSegment(loadable.boardCode)
+                    .addPathSegment("thread")
+                    .addPathSegment(loadable.no + "-tail.json")
+                    .build();
+        }
+
         @Override
         public HttpUrl imageUrl(Post.Builder post, Map<String, String> arg) {
             String imageFile = arg.get("tim") + "." + arg.get("ext");
@@ -282,6 +291,11 @@ public class Chan4
             return a.newBuilder().addPathSegment("boards.json").build();
         }
 
+        @Override
+        public List<String> hosts() {
+            return Arrays.asList(a.host(), i.host(), s.host(), b.host(), bSafe.host());
+        }
+
         @Override
         public HttpUrl pages(Board board) {
             return a.newBuilder().addPathSegment(board.code).addPathSegment("threads.json").build();
@@ -5,8 +5,8 @@ import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 
+import com.github.adamantcheese.chan.core.manager.FilterMatcher;
 import com.github.adamantcheese.chan.core.model.Post;
-import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.site.common.DefaultPostParser;
 import com.github.adamantcheese.chan.core.site.parser.CommentParser;
 import com.github.adamantcheese.chan.ui.theme.Theme;
@@ -17,7 +17,6 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.parser.Parser;
 
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,7 +30,7 @@ public class DvachPostParser
     }
 
     @Override
-    public Post parse(@NonNull Theme theme, Post.Builder builder, List<Filter> filters, Callback callback) {
+    public Post parse(@NonNull Theme theme, Post.Builder builder, FilterMatcher filters, Callback callback) {
         builder.name = Parser.unescapeEntities(builder.name, false);
         parseNameForColor(builder);
         return super.parse(theme, builder, filters, callback);
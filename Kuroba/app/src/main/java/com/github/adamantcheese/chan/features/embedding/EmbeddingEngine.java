@@ -177,7 +177,7 @@ public class EmbeddingEngine
         }
 
         // These count as embedding, so we do them here
-        List<PostLinkable> generatedAutoLinks = new ArrayList<>(generateAutoLinks(theme, autoLinkCopy));
+        List<PostLinkable> generatedAutoLinks = new ArrayList<>(generateAutoLinks(autoLinkCopy));
         List<PostLinkable> possibleImageLinks = new ArrayList<>(generatedAutoLinks);
         for (PostLinkable l : autoLinkCopy.getSpans(0, autoLinkCopy.length(), PostLinkable.class)) {
             if (l.type == PostLinkable.Type.EMBED_AUTO_LINK) possibleImageLinks.add(l);
@@ -206,7 +206,7 @@ public class EmbeddingEngine
         AtomicInteger processed = new AtomicInteger();
         for (Pair<Call, Callback> c : generatedCallPairs) {
             // enqueue all at the same time, wrapped callback to check when everything's complete
-            c.first.enqueue(new Callback() {
+            Callback callback = new Callback() {
                 @Override
                 public void onFailure(@NotNull Call call, @NotNull IOException e) {
                     c.second.onFailure(call, e);
@@ -238,7 +238,13 @@ public class EmbeddingEngine
                     }
                     onEmbeddingComplete(embeddable, embedCopy, generatedLinkables, generatedImages, invalidateFunction);
                 }
-            });
+            };
+            if (c.first instanceof NullCall) {
+                // cached embeds have nothing to load, they shouldn't wait for a slot behind the ones that do
+                c.first.enqueue(callback);
+            } else {
+                NetUtils.requestScheduler.enqueue(c.first, callback, NetUtilsClasses.Priority.PREFETCH);
+            }
             embeddable.embedCalls.add(c.first);
         }
         return true;
@@ -300,14 +306,14 @@ public class EmbeddingEngine
     }
 
     //region Embedding Helper Functions
-    private static List<PostLinkable> generateAutoLinks(Theme theme, SpannableStringBuilder comment) {
+    private static List<PostLinkable> generateAutoLinks(SpannableStringBuilder comment) {
         List<PostLinkable> generated = new ArrayList<>();
         Iterable<LinkSpan> links = LINK_EXTRACTOR.extractLinks(comment);
         for (LinkSpan link : links) {
             String linkText = TextUtils.substring(comment, link.getBeginIndex(), link.getEndIndex());
             String scheme = linkText.substring(0, linkText.indexOf(':'));
             if (!"http".equals(scheme) && !"https".equals(scheme)) continue; // only autolink URLs, not any random URI
-            PostLinkable pl = new PostLinkable(theme, linkText, PostLinkable.Type.EMBED_AUTO_LINK);
+            PostLinkable pl = new PostLinkable(linkText, PostLinkable.Type.EMBED_AUTO_LINK);
 
             // double check however and set up "archive" links here in place of regular links
             // this allows the person to pick any archive they want, regardless of if it actually is the link in question
@@ -319,7 +325,7 @@ public class EmbeddingEngine
                     Loadable resolved = a.resolvable().resolveLoadable(a, HttpUrl.get(linkText));
                     if (resolved != null) {
                         Object value = new ThreadLink(resolved.boardCode, resolved.no, resolved.markedNo);
-                        pl = new PostLinkable(theme, value, PostLinkable.Type.ARCHIVE);
+                        pl = new PostLinkable(value, PostLinkable.Type.ARCHIVE);
                     }
                 }
             } catch (Exception ignored) {}
@@ -426,6 +432,8 @@ public class EmbeddingEngine
                         ),
                         null,
                         NetUtilsClasses.ONE_DAY_CACHE,
+                        null,
+                        NetUtilsClasses.Priority.PREFETCH,
                         embedder.getTimeoutMillis(),
                         false
                 ));
@@ -543,7 +551,7 @@ public class EmbeddingEngine
                 );
 
                 // Set the linkable to be the entire length, including the icon
-                PostLinkable pl = new PostLinkable(theme, URL, PostLinkable.Type.EMBED_REPLACE_LINK);
+                PostLinkable pl = new PostLinkable(URL, PostLinkable.Type.EMBED_REPLACE_LINK);
                 replacement.setSpan(pl,
                         0,
                         replacement.length(),
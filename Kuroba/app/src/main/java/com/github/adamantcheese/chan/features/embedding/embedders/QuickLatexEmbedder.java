@@ -202,8 +202,7 @@ public class QuickLatexEmbedder
                                         | Spanned.SPAN_INCLUSIVE_EXCLUSIVE
                         );
                         // this will be removed before invalidation
-                        generatedLinkables.add(new PostLinkable(theme,
-                                rawMath,
+                        generatedLinkables.add(new PostLinkable(rawMath,
                                 PostLinkable.Type.EMBED_TEMP
                         ));
 
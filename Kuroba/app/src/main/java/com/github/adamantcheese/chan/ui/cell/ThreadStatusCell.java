@@ -83,6 +83,11 @@ public class ThreadStatusCell
                     return true;
                 }
 
+                @Override
+                public long getCachedCopyAge() {
+                    return -1L;
+                }
+
                 @Override
                 public ChanThread getChanThread() {
                     List<Post> testPosts = new ArrayList<>();
@@ -157,6 +162,13 @@ public class ThreadStatusCell
                 update = true;
             }
 
+            long cachedCopyAge = callback.getCachedCopyAge();
+            if (cachedCopyAge >= 0) {
+                builder.append('\n')
+                        .append(getContext().getString(R.string.thread_cached_copy, cachedCopyAge / 1000L));
+                update = true;
+            }
+
             builder.append('\n').append(chanThread.summarize(false));
             setText(builder);
 
@@ -205,6 +217,11 @@ public class ThreadStatusCell
 
         boolean isWatching();
 
+        /**
+         * @return milliseconds since the shown thread was received if it is a cached copy being revalidated, else -1
+         */
+        long getCachedCopyAge();
+
         @Nullable
         ChanThread getChanThread();
 
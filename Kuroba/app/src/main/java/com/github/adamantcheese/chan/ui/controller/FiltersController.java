@@ -37,6 +37,7 @@ import com.github.adamantcheese.chan.core.database.DatabaseFilterManager;
 import com.github.adamantcheese.chan.core.database.DatabaseUtils;
 import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.manager.FilterEngine.FilterAction;
+import com.github.adamantcheese.chan.core.manager.FilterStats;
 import com.github.adamantcheese.chan.core.manager.FilterType;
 import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
@@ -272,7 +273,7 @@ public class FiltersController
     }
 
     private void setEnableButtonState() {
-        if (filterEngine.getEnabledFilters().isEmpty()) {
+        if (filterEngine.getSnapshot().getEnabledFilters().isEmpty()) {
             enable.setImageResource(R.drawable.ic_fluent_checkmark_24_filled);
         } else {
             enable.setImageResource(R.drawable.ic_fluent_dismiss_24_filled);
@@ -354,6 +355,17 @@ public class FiltersController
 
             subText.append(" \u2013 ").append(FilterAction.actionName(FilterAction.forId(filter.action)));
 
+            FilterStats stats = filterEngine.getStats(filter);
+            if (stats != null && stats.isOverBudget()) {
+                subText.append("\n").append(getString(R.string.filter_summary_too_slow, stats.getOverBudgetMillis()));
+            } else if (stats != null && (stats.getHitCount() > 0 || stats.getMatchTimeMillis() > 0)) {
+                subText.append("\n")
+                        .append(getString(R.string.filter_summary_stats,
+                                getQuantityString(R.plurals.filter_hit, stats.getHitCount()),
+                                stats.getMatchTimeMillis()
+                        ));
+            }
+
             holder.subtext.setText(subText.toString());
         }
 
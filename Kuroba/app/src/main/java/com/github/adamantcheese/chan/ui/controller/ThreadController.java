@@ -48,6 +48,7 @@ import java.util.List;
 
 import okhttp3.HttpUrl;
 
+import static com.github.adamantcheese.chan.ui.helper.RefreshUIMessage.Reason.FILTERS_CHANGED;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getString;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.openLink;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.openLinkInBrowser;
@@ -137,7 +138,11 @@ public abstract class ThreadController
 
     @Subscribe
     public void onEvent(RefreshUIMessage message) {
-        threadLayout.getPresenter().requestData();
+        if (message.reason == FILTERS_CHANGED) {
+            threadLayout.getPresenter().onFiltersChanged();
+        } else {
+            threadLayout.getPresenter().requestData();
+        }
     }
 
     @Override
@@ -30,28 +30,53 @@ import com.github.adamantcheese.chan.StartActivity;
 import com.github.adamantcheese.chan.controller.Controller;
 import com.github.adamantcheese.chan.core.database.DatabaseHelper;
 import com.github.adamantcheese.chan.core.database.DatabaseUtils;
+import com.github.adamantcheese.chan.core.manager.ChanLoaderManager;
+import com.github.adamantcheese.chan.core.manager.FilterEngine;
+import com.github.adamantcheese.chan.core.manager.FilterMatcher;
+import com.github.adamantcheese.chan.core.manager.FilterSnapshot;
+import com.github.adamantcheese.chan.core.manager.FilterType;
 import com.github.adamantcheese.chan.core.manager.FilterWatchManager;
 import com.github.adamantcheese.chan.core.manager.WakeManager;
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.net.ProgressResponseBody;
+import com.github.adamantcheese.chan.core.net.ProgressResponseBody.ProgressListener;
 import com.github.adamantcheese.chan.core.net.WebviewSyncCookieManager;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.settings.PersistableChanState;
 import com.github.adamantcheese.chan.core.settings.primitives.Setting;
+import com.github.adamantcheese.chan.core.site.parser.ChanReaderParser;
+import com.github.adamantcheese.chan.core.site.parser.ParsedPostCache;
 import com.github.adamantcheese.chan.features.embedding.EmbeddingEngine;
 import com.github.adamantcheese.chan.ui.controller.LogsController;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Benchmark;
 import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.StringUtils;
+import com.vdurmont.emoji.EmojiParser;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.dp;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getAttrColor;
+import static com.github.adamantcheese.chan.utils.AndroidUtils.setClipboardContent;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.updatePaddings;
 
 public class DeveloperSettingsController
@@ -62,11 +87,30 @@ public class DeveloperSettingsController
     DatabaseHelper databaseHelper;
     @Inject
     WakeManager wakeManager;
+    @Inject
+    ParsedPostCache parsedPostCache;
+    @Inject
+    FilterEngine filterEngine;
 
     public DeveloperSettingsController(Context context) {
         super(context);
     }
 
+    private void runBenchmark(TextView results, Callable<String> benchmark) {
+        showToast(context, "Running benchmark");
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            String result;
+            try {
+                result = benchmark.call();
+            } catch (Exception e) {
+                result = "Benchmark failed: " + e.getMessage();
+            }
+            Logger.i(this, result);
+            String finalResult = result;
+            BackgroundUtils.runOnMainThread(() -> results.append("\n" + finalResult));
+        });
+    }
+
     @SuppressLint("SetTextI18n")
     @Override
     public void onCreate() {
@@ -105,6 +149,144 @@ public class DeveloperSettingsController
         updatePaddings(summaryText, 0, 0, dp(5), 0);
         wrapper.addView(summaryText);
 
+        //NETWORK QUEUE SUMMARY
+        TextView requestQueueText = new TextView(context);
+        requestQueueText.setText("Request queues (tap to refresh):\n" + NetUtils.requestScheduler.getSummary());
+        requestQueueText.setOnClickListener(v -> requestQueueText.setText(
+                "Request queues (tap to refresh):\n" + NetUtils.requestScheduler.getSummary()));
+        updatePaddings(requestQueueText, 0, 0, dp(5), 0);
+        wrapper.addView(requestQueueText);
+
+        //NETWORK TIMINGS
+        TextView networkTimingsText = new TextView(context);
+        networkTimingsText.setText("Network timings (tap to refresh):\n" + NetUtils.networkTimings.getSummary());
+        networkTimingsText.setOnClickListener(v -> networkTimingsText.setText(
+                "Network timings (tap to refresh):\n" + NetUtils.networkTimings.getSummary()));
+        updatePaddings(networkTimingsText, 0, 0, dp(5), 0);
+        wrapper.addView(networkTimingsText);
+
+        Button exportNetworkTimings = new Button(context);
+        exportNetworkTimings.setOnClickListener(v -> {
+            setClipboardContent("Network timings", NetUtils.networkTimings.exportJson());
+            showToast(context, "Copied network timings to clipboard");
+        });
+        exportNetworkTimings.setText("Copy network timings as JSON");
+        wrapper.addView(exportNetworkTimings);
+
+        //PARSE TIMINGS
+        TextView parseTimingsText = new TextView(context);
+        parseTimingsText.setText("Parse timings (tap to refresh):\n" + ChanReaderParser.parseTimings.getSummary());
+        parseTimingsText.setOnClickListener(v -> parseTimingsText.setText(
+                "Parse timings (tap to refresh):\n" + ChanReaderParser.parseTimings.getSummary()));
+        updatePaddings(parseTimingsText, 0, 0, dp(5), 0);
+        wrapper.addView(parseTimingsText);
+
+        //BENCHMARKS
+        TextView benchmarkResults = new TextView(context);
+        benchmarkResults.setText("Benchmarks (results are also logged):");
+        updatePaddings(benchmarkResults, 0, 0, dp(5), 0);
+        wrapper.addView(benchmarkResults);
+
+        Button benchmarkRequestSetup = new Button(context);
+        benchmarkRequestSetup.setOnClickListener(v -> runBenchmark(benchmarkResults, () -> {
+            // the calls are only created, never executed
+            HttpUrl url = HttpUrl.get("https://example.com/");
+            ProgressListener listener = (source, bytesRead, contentLength, start, done) -> {};
+            return Benchmark.compare("Creating 100 calls with a timeout and progress listener", () -> {
+                // a client per call, like makeCall did before
+                for (int i = 0; i < 100; i++) {
+                    NetUtils.applicationClient.newBuilder()
+                            .callTimeout(2500, TimeUnit.MILLISECONDS)
+                            .addNetworkInterceptor(chain -> chain.proceed(chain.request()))
+                            .build()
+                            .newCall(new Request.Builder().url(url).build());
+                }
+            }, () -> {
+                for (int i = 0; i < 100; i++) {
+                    Request.Builder builder = new Request.Builder().url(url);
+                    ProgressResponseBody.tag(builder, listener);
+                    NetUtils.applicationClient.newCall(builder.build()).timeout().timeout(2500, TimeUnit.MILLISECONDS);
+                }
+            });
+        }));
+        benchmarkRequestSetup.setText("Benchmark request setup");
+        wrapper.addView(benchmarkRequestSetup);
+
+        Button benchmarkEmoji = new Button(context);
+        benchmarkEmoji.setOnClickListener(v -> {
+            // the comments already had their shortcodes replaced, like most comments that never had any
+            List<String> texts = new ArrayList<>();
+            for (Post post : ChanLoaderManager.getLoadedPosts()) {
+                texts.add(post.comment.toString());
+                texts.add(post.name);
+                texts.add(post.subject);
+            }
+            texts.add("shortcodes :smile: :thumbsup|type_3: and :not_an_alias: 12:30:00");
+            runBenchmark(benchmarkResults,
+                    () -> Benchmark.compare("Replacing emoji shortcodes in " + texts.size() + " texts of loaded posts",
+                            () -> {
+                                for (String text : texts) {
+                                    EmojiParser.parseToUnicode(text);
+                                }
+                            },
+                            () -> {
+                                for (String text : texts) {
+                                    StringUtils.parseEmojiToUnicode(text);
+                                }
+                            }
+                    )
+            );
+        });
+        benchmarkEmoji.setText("Benchmark emoji replacement on loaded threads");
+        wrapper.addView(benchmarkEmoji);
+
+        Button benchmarkFilters = new Button(context);
+        benchmarkFilters.setOnClickListener(v -> {
+            List<Post> posts = ChanLoaderManager.getLoadedPosts();
+            runBenchmark(benchmarkResults, () -> {
+                // image hash filters are left out, the filter engine hides matched images of the loaded posts
+                FilterSnapshot snapshot = filterEngine.getSnapshot();
+                Map<String, List<Filter>> boardFilters = new HashMap<>();
+                Map<String, FilterMatcher> boardMatchers = new HashMap<>();
+                List<List<Filter>> postFilters = new ArrayList<>();
+                List<FilterMatcher> postMatchers = new ArrayList<>();
+                for (Post post : posts) {
+                    String key = post.board.siteId + ":" + post.board.code;
+                    List<Filter> filters = boardFilters.get(key);
+                    if (filters == null) {
+                        filters = new ArrayList<>();
+                        for (Filter filter : snapshot.getEnabledFilters(post.board)) {
+                            if ((filter.type & FilterType.IMAGE.flag) == 0) {
+                                filters.add(filter);
+                            }
+                        }
+                        boardFilters.put(key, filters);
+                        boardMatchers.put(key, filterEngine.compileFilters(filters));
+                    }
+                    postFilters.add(filters);
+                    postMatchers.add(boardMatchers.get(key));
+                }
+                // both sides make new builders, so neither sees images removed by the other
+                return Benchmark.compare("Matching " + posts.size() + " loaded posts against their board's filters",
+                        () -> {
+                            for (int i = 0; i < posts.size(); i++) {
+                                Post.Builder builder = posts.get(i).unfilteredBuilder();
+                                for (Filter filter : postFilters.get(i)) {
+                                    filterEngine.matches(filter, builder);
+                                }
+                            }
+                        },
+                        () -> {
+                            for (int i = 0; i < posts.size(); i++) {
+                                postMatchers.get(i).match(posts.get(i).unfilteredBuilder(), true);
+                            }
+                        }
+                );
+            });
+        });
+        benchmarkFilters.setText("Benchmark filter matching on loaded threads");
+        wrapper.addView(benchmarkFilters);
+
         //APP RESET
         Button resetDbButton = new Button(context);
         resetDbButton.setOnClickListener(v -> {
@@ -161,6 +343,16 @@ public class DeveloperSettingsController
         clearVideoTitleCache.setText("Clear video title cache");
         wrapper.addView(clearVideoTitleCache);
 
+        Button clearParsedPostCache = new Button(context);
+        clearParsedPostCache.setOnClickListener(v -> BackgroundUtils.runOnBackgroundThread(() -> {
+            parsedPostCache.clear();
+            // so the timings afterwards show how parsing does with a cold cache
+            ChanReaderParser.parseTimings.clear();
+            BackgroundUtils.runOnMainThread(() -> showToast(context, "Cleared parsed post cache"));
+        }));
+        clearParsedPostCache.setText("Clear parsed post cache");
+        wrapper.addView(clearParsedPostCache);
+
         //THREAD STACK DUMPER
         Button dumpAllThreadStacks = new Button(context);
         dumpAllThreadStacks.setOnClickListener(v -> {
@@ -40,6 +40,7 @@ import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.StartActivity;
 import com.github.adamantcheese.chan.controller.Controller;
 import com.github.adamantcheese.chan.core.manager.FilterEngine;
+import com.github.adamantcheese.chan.core.manager.FilterMatcher;
 import com.github.adamantcheese.chan.core.manager.FilterType;
 import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
@@ -61,6 +62,7 @@ import com.github.adamantcheese.chan.ui.cell.PostCell;
 import com.github.adamantcheese.chan.ui.cell.ThreadStatusCell;
 import com.github.adamantcheese.chan.ui.controller.ImageViewerController;
 import com.github.adamantcheese.chan.ui.controller.ImageViewerNavigationController;
+import com.github.adamantcheese.chan.ui.text.ThemedSpan;
 import com.github.adamantcheese.chan.ui.theme.Theme;
 import com.github.adamantcheese.chan.ui.theme.Theme.MaterialColorStyle;
 import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
@@ -80,6 +82,7 @@ import java.util.List;
 import okhttp3.HttpUrl;
 
 import static androidx.viewpager2.widget.ViewPager2.ORIENTATION_HORIZONTAL;
+import static com.github.adamantcheese.chan.Chan.instance;
 import static com.github.adamantcheese.chan.ui.theme.ThemeHelper.createTheme;
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
 import static com.github.adamantcheese.chan.ui.widget.DefaultAlertDialog.getDefaultAlertBuilder;
@@ -386,7 +389,8 @@ public class ThemeSettingsController
         pager.setCurrentItem(i, false);
     }
 
-    final List<Filter> filters = Collections.singletonList(new Filter(true,
+    final FilterMatcher filters = instance(FilterEngine.class).compileFilters(Collections.singletonList(new Filter(
+            true,
             FilterType.SUBJECT.flag | FilterType.COMMENT.flag,
             "test",
             true,
@@ -397,7 +401,7 @@ public class ThemeSettingsController
             0,
             false,
             false
-    ));
+    )));
     final PostParser postParser = new DefaultPostParser(new CommentParser().addDefaultRules());
 
     private class ThemePostsAdapter
@@ -505,6 +509,10 @@ public class ThemeSettingsController
             ChanThread thread = new ChanThread(dummyLoadable, posts);
 
             for (Post p : thread.getPosts()) {
+                // the preview is drawn in its own theme, not the active one
+                ThemedSpan.bindAll(p.comment, holder.theme);
+                ThemedSpan.bindAll(p.subjectSpan, holder.theme);
+                ThemedSpan.bindAll(p.nameTripcodeIdCapcodeSpan, holder.theme);
                 List<PostLinkable> linkables = p.getQuoteLinkables();
                 for (PostLinkable linkable : linkables) {
                     linkable.setMarkedNo(linkables.size() > 1 ? 123456789 : -1);
@@ -523,6 +531,11 @@ public class ThemeSettingsController
                     return false;
                 }
 
+                @Override
+                public long getCachedCopyAge() {
+                    return -1L;
+                }
+
                 @Override
                 public ChanThread getChanThread() {
                     return thread;
@@ -90,7 +90,6 @@ import com.google.common.base.Functions;
 import com.google.common.collect.Ordering;
 import com.skydoves.balloon.ArrowOrientation;
 import com.skydoves.balloon.Balloon;
-import com.vdurmont.emoji.EmojiParser;
 
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
@@ -108,6 +107,7 @@ import static com.github.adamantcheese.chan.utils.AndroidUtils.getAttrColor;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getString;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.hideKeyboard;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.requestViewAndKeyboardFocus;
+import static com.github.adamantcheese.chan.utils.StringUtils.parseEmojiToUnicode;
 
 public class ReplyLayout
         extends LoadView
@@ -588,8 +588,8 @@ public class ReplyLayout
     @Override
     public void loadDraftIntoViews(Reply draft) {
         if (ChanSettings.enableEmoji.get()) {
-            draft.name = EmojiParser.parseToUnicode(draft.name);
-            draft.comment = EmojiParser.parseToUnicode(draft.comment);
+            draft.name = parseEmojiToUnicode(draft.name);
+            draft.comment = parseEmojiToUnicode(draft.comment);
         }
         blockTextChange = true;
         name.setText(draft.name);
@@ -9,21 +9,24 @@ import android.text.style.LineBackgroundSpan;
 import android.text.style.TypefaceSpan;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.ui.theme.Theme;
 import com.github.adamantcheese.chan.utils.StringUtils;
 
-import static com.github.adamantcheese.chan.utils.AndroidUtils.getAttrColor;
-
 public class CodeBackgroundSpan
         extends TypefaceSpan
-        implements LineBackgroundSpan {
-    private final int color;
+        implements LineBackgroundSpan, ThemedSpan {
+    private Theme boundTheme;
 
-    public CodeBackgroundSpan(Theme theme) {
+    public CodeBackgroundSpan() {
         super("monospace");
-        this.color = getAttrColor(theme.resValue, R.attr.backcolor_secondary);
+    }
+
+    @Override
+    public void bindTheme(@Nullable Theme theme) {
+        boundTheme = theme;
     }
 
     @Override
@@ -42,7 +45,7 @@ public class CodeBackgroundSpan
     ) {
         // work paint for calculations; typeface isn't set when this is called, so we need to set it here
         final Paint workPaint = new Paint(paint);
-        workPaint.setColor(color);
+        workPaint.setColor(ThemedSpan.drawTheme(boundTheme).getAttrColor(R.attr.backcolor_secondary));
         workPaint.setTypeface(Typeface.MONOSPACE);
 
         // calculate starting position of this span on the line
@@ -0,0 +1,58 @@
+package com.github.adamantcheese.chan.ui.text;
+
+import android.text.TextPaint;
+import android.text.style.CharacterStyle;
+import android.text.style.UpdateAppearance;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.ui.theme.Theme;
+
+/**
+ * Colors text, or its background, with a color attribute from the theme it's drawn with.
+ */
+public class ThemeColorSpan
+        extends CharacterStyle
+        implements UpdateAppearance, ThemedSpan {
+    public final int colorAttr;
+    public final boolean background;
+    private Theme boundTheme;
+
+    public ThemeColorSpan(int colorAttr) {
+        this(colorAttr, false);
+    }
+
+    public ThemeColorSpan(int colorAttr, boolean background) {
+        this.colorAttr = colorAttr;
+        this.background = background;
+    }
+
+    @Override
+    public void bindTheme(@Nullable Theme theme) {
+        boundTheme = theme;
+    }
+
+    @Override
+    public void updateDrawState(@NonNull TextPaint textPaint) {
+        int color = ThemedSpan.drawTheme(boundTheme).getAttrColor(colorAttr);
+        if (background) {
+            textPaint.bgColor = color;
+        } else {
+            textPaint.setColor(color);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ThemeColorSpan that = (ThemeColorSpan) o;
+        return colorAttr == that.colorAttr && background == that.background;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * colorAttr + (background ? 1 : 0);
+    }
+}
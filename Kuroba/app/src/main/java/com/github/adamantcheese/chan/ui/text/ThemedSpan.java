@@ -0,0 +1,38 @@
+package com.github.adamantcheese.chan.ui.text;
+
+import android.text.Spanned;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.ui.theme.Theme;
+import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
+
+/**
+ * A span that only knows which theme attributes it uses, and looks up the actual colors when it's drawn. This keeps
+ * parsed text valid across theme changes. By default the active theme is used, unless the span is bound to a theme.
+ */
+public interface ThemedSpan {
+    /**
+     * @param theme the theme to always draw this span with, or null to use the active theme
+     */
+    void bindTheme(@Nullable Theme theme);
+
+    /**
+     * @return the bound theme if there is one, otherwise the active theme
+     */
+    @NonNull
+    static Theme drawTheme(@Nullable Theme boundTheme) {
+        return boundTheme != null ? boundTheme : ThemeHelper.getTheme();
+    }
+
+    /**
+     * Bind all themed spans in the given text to a theme, for showing text in something other than the active theme.
+     */
+    static void bindAll(@Nullable CharSequence text, @Nullable Theme theme) {
+        if (!(text instanceof Spanned)) return;
+        for (ThemedSpan span : ((Spanned) text).getSpans(0, text.length(), ThemedSpan.class)) {
+            span.bindTheme(theme);
+        }
+    }
+}
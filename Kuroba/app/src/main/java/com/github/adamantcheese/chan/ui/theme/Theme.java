@@ -27,12 +27,15 @@ import com.github.adamantcheese.chan.core.site.parser.PostParser;
 import com.github.adamantcheese.chan.utils.AndroidUtils;
 import com.github.adamantcheese.chan.utils.StringUtils;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
  * A Theme object, a wrapper around a Android theme<br>
- * Used for setting the toolbar color, and passed around {@link PostParser} to give spans their correct colors.<br>
- * Technically the parser should not do UI, but it is important that spans do not get created on a UI thread for performance.
+ * Used for setting the toolbar color, and passed around {@link PostParser}.<br>
+ * Spans made by the parser only refer to color attributes; they get the actual colors from here when drawn, see
+ * {@link com.github.adamantcheese.chan.ui.text.ThemedSpan}.
  * <br><br>
  * Add additional styleable elements for this theme to the Theme Context styleables region
  * See {@link ThemeHelper#createTheme(Context, Theme)} to add those elements to the theme context used for the entire application.
@@ -68,9 +71,10 @@ public class Theme {
     public Typeface altFont = ROBOTO_CONDENSED;
     public boolean altFontIsMain = false;
 
-    // Span colors, kept here for performance reasons
-    public int subjectColor;
-    public int nameColor;
+    // Span colors are looked up whenever spans are drawn, so keep them around
+    private final Map<Integer, Integer> attrColors = new ConcurrentHashMap<>();
+    private MaterialColorStyle resolvedAccentStyle;
+    private int resolvedAccentColor;
 
     private static final Typeface ROBOTO_MEDIUM = Typeface.create("sans-serif-medium", Typeface.NORMAL);
     private static final Typeface ROBOTO_CONDENSED = Typeface.create("sans-serif-condensed", Typeface.NORMAL);
@@ -82,10 +86,6 @@ public class Theme {
         defaultPrimary = primaryColor;
         this.accentColor = accentColor;
         defaultAccent = accentColor;
-
-        // Span color setup
-        subjectColor = AndroidUtils.getAttrColor(resValue, R.attr.post_subject_color);
-        nameColor = AndroidUtils.getAttrColor(resValue, R.attr.post_name_color);
     }
 
     public Theme(
@@ -101,6 +101,28 @@ public class Theme {
         this.altFont = altFont;
     }
 
+    /**
+     * @param attr A color attribute, like R.attr.post_quote_color; R.attr.colorAccent comes from the accent color
+     * @return The color for that attribute in this theme
+     */
+    public int getAttrColor(int attr) {
+        if (attr == R.attr.colorAccent) {
+            // the accent color can be changed, so it's cached separately
+            MaterialColorStyle accent = accentColor;
+            if (accent != resolvedAccentStyle) {
+                resolvedAccentColor = AndroidUtils.getAttrColor(accent.accentStyleId, R.attr.colorAccent);
+                resolvedAccentStyle = accent;
+            }
+            return resolvedAccentColor;
+        }
+        Integer color = attrColors.get(attr);
+        if (color == null) {
+            color = AndroidUtils.getAttrColor(resValue, attr);
+            attrColors.put(attr, color);
+        }
+        return color;
+    }
+
     public void reset() {
         primaryColor = defaultPrimary;
         accentColor = defaultAccent;
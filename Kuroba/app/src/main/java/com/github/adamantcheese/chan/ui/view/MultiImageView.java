@@ -416,7 +416,8 @@ public class MultiImageView
                     }
                 }),
                 this,
-                NetUtilsClasses.ONE_DAY_CACHE
+                NetUtilsClasses.ONE_DAY_CACHE,
+                NetUtilsClasses.Priority.VISIBLE_MEDIA
         );
     }
 
@@ -446,7 +447,8 @@ public class MultiImageView
                     }
                 }),
                 this,
-                NetUtilsClasses.ONE_DAY_CACHE
+                NetUtilsClasses.ONE_DAY_CACHE,
+                NetUtilsClasses.Priority.VISIBLE_MEDIA
         );
     }
 
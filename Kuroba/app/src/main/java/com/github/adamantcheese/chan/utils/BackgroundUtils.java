@@ -27,6 +27,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -52,6 +53,9 @@ public class BackgroundUtils {
                     new LinkedBlockingQueue<>()
             );
 
+    // Dedicated to CPU-bound work that is split into chunks, like post parsing; idle threads steal chunks from busy ones
+    public static final ForkJoinPool parsingPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     public static final ScheduledExecutorService backgroundScheduledService = Executors.newScheduledThreadPool(1);
 
     public static boolean isInForeground() {
@@ -0,0 +1,69 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.utils;
+
+import android.os.Build;
+import android.os.Debug;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Times an old and a new implementation of the same thing against each other on the device, for the developer
+ * settings. Each is warmed up first and then run for a number of rounds; the median time of a round is reported, and
+ * on Android 6.0 and up the bytes allocated per round as well. Allocations are counted for the whole runtime, so
+ * anything else running at the same time adds to them.
+ */
+public class Benchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    public static String compare(String name, Runnable before, Runnable after) {
+        BackgroundUtils.ensureBackgroundThread();
+        return name + "\n  before: " + measure(before) + "\n  after: " + measure(after);
+    }
+
+    private static String measure(Runnable round) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+
+        long[] nanos = new long[ROUNDS];
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            round.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        long allocatedAfter = allocatedBytes();
+
+        Arrays.sort(nanos);
+        String allocated = allocatedBefore < 0 || allocatedAfter < 0
+                ? "unknown"
+                : (allocatedAfter - allocatedBefore) / ROUNDS / 1024 + " KB";
+        return String.format(Locale.ENGLISH, "%.2f ms, %s allocated", nanos[ROUNDS / 2] / 1e6, allocated);
+    }
+
+    private static long allocatedBytes() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return -1;
+        try {
+            return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
@@ -13,12 +13,17 @@ import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.ui.text.SearchHighlightSpan;
 import com.github.adamantcheese.chan.ui.theme.Theme;
 import com.google.common.io.Files;
+import com.vdurmont.emoji.Emoji;
+import com.vdurmont.emoji.EmojiManager;
 import com.vdurmont.emoji.EmojiParser;
+import com.vdurmont.emoji.Fitzpatrick;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -125,6 +130,76 @@ public class StringUtils {
         return false;
     }
 
+    /**
+     * Replaces :alias: and :alias|type_n: shortcodes with their emoji, like {@link EmojiParser#parseToUnicode(String)}
+     * does, but in a single pass that doesn't allocate anything for text without a shortcode in it.
+     */
+    public static String parseEmojiToUnicode(String input) {
+        if (input.contains("&#")) {
+            // HTML encoded emoji are rare enough to leave to the library
+            return EmojiParser.parseToUnicode(input);
+        }
+
+        StringBuilder result = null;
+        int last = 0;
+        int start = input.indexOf(':');
+        while (start != -1) {
+            int end = input.indexOf(':', start + 1);
+            if (end == -1) break;
+
+            String emoji = end - start - 1 <= EmojiAliases.MAX_LENGTH
+                    ? EmojiAliases.toUnicode(input.substring(start + 1, end))
+                    : null;
+            if (emoji != null) {
+                if (result == null) {
+                    result = new StringBuilder(input.length());
+                }
+                result.append(input, last, start).append(emoji);
+                last = end + 1;
+                start = input.indexOf(':', last);
+            } else {
+                // the closing colon might open the next alias
+                start = end;
+            }
+        }
+
+        if (result == null) return input;
+        return result.append(input, last, input.length()).toString();
+    }
+
+    // All emoji aliases; loaded the first time a possible alias is found
+    private static class EmojiAliases {
+        private static final Map<String, Emoji> ALIASES = new HashMap<>();
+        // the longest alias, plus room for a skin tone modifier
+        private static final int MAX_LENGTH;
+
+        static {
+            int maxLength = 0;
+            for (Emoji emoji : EmojiManager.getAll()) {
+                for (String alias : emoji.getAliases()) {
+                    ALIASES.put(alias, emoji);
+                    maxLength = Math.max(maxLength, alias.length());
+                }
+            }
+            MAX_LENGTH = maxLength + "|type_1_2".length();
+        }
+
+        @Nullable
+        private static String toUnicode(String alias) {
+            int modifierIndex = alias.indexOf('|');
+            Emoji emoji = ALIASES.get(modifierIndex == -1 ? alias : alias.substring(0, modifierIndex));
+            if (emoji == null) return null;
+
+            if (modifierIndex != -1 && emoji.supportsFitzpatrick()) {
+                Fitzpatrick fitzpatrick = Fitzpatrick.fitzpatrickFromType(alias.substring(modifierIndex + 1));
+                if (fitzpatrick != null) {
+                    return emoji.getUnicode() + fitzpatrick.unicode;
+                }
+            }
+            return emoji.getUnicode();
+        }
+    }
+
     public static String parseEmojiToAscii(String input) {
         return EmojiParser.parseFromUnicode(
                 input,